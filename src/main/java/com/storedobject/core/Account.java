@@ -9,6 +9,11 @@ import java.math.BigInteger;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents an Account. Account has a status ({@link #getAccountStatus()}) which is a bit pattern with
@@ -808,8 +813,11 @@ public class Account extends StoredObject implements OfEntity, HasName {
 
         static final String ENTRY =
                 "SELECT TranId,Object,EntrySerial,Date,Amount,LocalCurrencyAmount,Narration,Type,ValueDate FROM core.Ledger WHERE Account=";
+        private static final int BATCH_SIZE = 200;
         private final DatePeriod datePeriod;
         private final RawSQL sql;
+        private final Currency currency = getCurrency(), localCurrency = getLocalCurrency();
+        private final ArrayDeque<LedgerEntry> buffer = new ArrayDeque<>();
         private Money opBalance, opBalanceLC, runningBal, runningBalLC;
 
         private AccountLedger(DatePeriod datePeriod) {
@@ -863,28 +871,138 @@ public class Account extends StoredObject implements OfEntity, HasName {
 
         @Override
         public LedgerEntry next() {
-            if(sql.eoq()) {
+            if(!fill()) {
                 throw new NoSuchElementException();
             }
-            LedgerEntry entry = new LedgerEntry();
-            try {
-                entry.setRow(Account.this, sql.getResult(), runningBal, runningBalLC);
-                runningBal = entry.balance;
-                runningBalLC = entry.localCurrencyBalance;
-                sql.skip();
-            } catch(Exception e) {
-                throw new NoSuchElementException("Can't set values");
-            }
-            return entry;
+            return buffer.poll();
         }
 
         @Override
         public boolean hasNext() {
+            return fill();
+        }
+
+        /**
+         * Read the next batch of entries if the buffer is empty. Entries of a batch share the lookups of their
+         * vouchers and transaction types (see {@link LedgerBatch}).
+         *
+         * @return True if entries are available in the buffer.
+         */
+        private boolean fill() {
+            if(!buffer.isEmpty()) {
+                return true;
+            }
             if(sql.eoq()) {
                 sql.close();
                 return false;
             }
-            return true;
+            LedgerBatch batch = new LedgerBatch();
+            try {
+                ResultSet rs = sql.getResult();
+                LedgerEntry entry;
+                while(batch.entries.size() < BATCH_SIZE && !sql.eoq()) {
+                    entry = new LedgerEntry();
+                    entry.setRow(currency, localCurrency, rs, runningBal, runningBalLC);
+                    entry.batch = batch;
+                    runningBal = entry.balance;
+                    runningBalLC = entry.localCurrencyBalance;
+                    batch.entries.add(entry);
+                    sql.skip();
+                }
+            } catch(Exception e) {
+                throw new NoSuchElementException("Can't set values");
+            }
+            buffer.addAll(batch.entries);
+            return !buffer.isEmpty();
+        }
+    }
+
+    /**
+     * A batch of ledger entries read together. The vouchers (including the other vouchers of the same ledger
+     * transactions) and the transaction types of all the entries in the batch are retrieved together when any of
+     * them is required for the first time.
+     */
+    private static class LedgerBatch {
+
+        private final List<LedgerEntry> entries = new ArrayList<>();
+        private Map<BigInteger, JournalVoucher> vouchers;
+        private Map<BigInteger, List<BigInteger>> tranVouchers;
+        private Map<BigInteger, String> types;
+
+        synchronized JournalVoucher voucher(BigInteger voucher) {
+            loadVouchers();
+            return vouchers.get(voucher);
+        }
+
+        synchronized List<JournalVoucher> vouchers(LedgerEntry entry) {
+            loadVouchers();
+            List<JournalVoucher> list = new ArrayList<>();
+            JournalVoucher jv = vouchers.get(entry.voucher);
+            if(jv == null) {
+                return list;
+            }
+            list.add(jv);
+            for(BigInteger v: tranVouchers.getOrDefault(entry.ledgerTran, List.of())) {
+                if(!v.equals(entry.voucher) && (jv = vouchers.get(v)) != null) {
+                    list.add(jv);
+                }
+            }
+            return list;
+        }
+
+        synchronized String type(BigInteger type) {
+            if(types == null) {
+                types = new HashMap<>();
+                Set<BigInteger> ids = new HashSet<>();
+                entries.forEach(e -> ids.add(e.type));
+                ids.remove(BigInteger.ZERO);
+                if(!ids.isEmpty()) {
+                    list(TransactionType.class, "Id IN (" + in(ids) + ")")
+                            .forEach(tt -> types.put(tt.getId().get(), tt.getShortName()));
+                }
+            }
+            return types.get(type);
+        }
+
+        private void loadVouchers() {
+            if(vouchers != null) {
+                return;
+            }
+            vouchers = new HashMap<>();
+            tranVouchers = new HashMap<>();
+            Set<BigInteger> tranIds = new HashSet<>(), ids = new HashSet<>();
+            entries.forEach(e -> {
+                tranIds.add(e.ledgerTran);
+                ids.add(e.voucher);
+            });
+            RawSQL sql = new RawSQL();
+            try {
+                sql.execute("SELECT DISTINCT TranId,Object FROM core.Ledger WHERE TranId IN (" + in(tranIds) + ")");
+                ResultSet rs = sql.getResult();
+                BigInteger v;
+                while(!sql.eoq()) {
+                    v = rs.getBigDecimal(2).toBigInteger();
+                    tranVouchers.computeIfAbsent(rs.getBigDecimal(1).toBigInteger(), k -> new ArrayList<>()).add(v);
+                    ids.add(v);
+                    sql.skip();
+                }
+            } catch (Exception ignored) {
+            } finally {
+                sql.close();
+            }
+            StoredObject.list(JournalVoucher.class, "Id IN (" + in(ids) + ")", true)
+                    .forEach(jv -> vouchers.put(jv.getId().get(), jv));
+        }
+
+        private static String in(Set<BigInteger> ids) {
+            StringBuilder s = new StringBuilder();
+            for(BigInteger id: ids) {
+                if(!s.isEmpty()) {
+                    s.append(',');
+                }
+                s.append(id);
+            }
+            return s.toString();
         }
     }
 
@@ -895,6 +1013,7 @@ public class Account extends StoredObject implements OfEntity, HasName {
         private String narration;
         private BigInteger voucher, ledgerTran, type;
         private int entrySerial;
+        private LedgerBatch batch;
 
         /**
          * Constructor.
@@ -908,20 +1027,21 @@ public class Account extends StoredObject implements OfEntity, HasName {
             this.date = date;
         }
 
-        void setRow(Account account, ResultSet rs, Money opBalance, Money opBalanceLC) throws Exception {
-            setRow(account, rs);
+        void setRow(Currency currency, Currency localCurrency, ResultSet rs, Money opBalance, Money opBalanceLC)
+                throws Exception {
+            setRow(currency, localCurrency, rs);
             this.balance = opBalance.add(amount);
             this.localCurrencyBalance = opBalanceLC.add(localCurrencyAmount);
         }
 
-        void setRow(Account account, ResultSet rs) throws Exception {
+        void setRow(Currency currency, Currency localCurrency, ResultSet rs) throws Exception {
             ledgerTran = rs.getBigDecimal(1).toBigInteger();
             voucher = rs.getBigDecimal(2).toBigInteger();
             entrySerial = rs.getInt(3);
             date = rs.getDate(4);
             BigDecimal a = rs.getBigDecimal(5), la = rs.getBigDecimal(6);
-            amount = new Money(a, account.getCurrency());
-            localCurrencyAmount = new Money(la, account.getLocalCurrency());
+            amount = new Money(a, currency);
+            localCurrencyAmount = new Money(la, localCurrency);
             narration = rs.getString(7);
             type = rs.getBigDecimal(8).toBigInteger();
             valueDate = rs.getDate(9);
@@ -974,12 +1094,13 @@ public class Account extends StoredObject implements OfEntity, HasName {
 
         @Override
         public JournalVoucher getVoucher() {
-            return get(JournalVoucher.class, new Id(voucher), true);
+            return batch == null ? get(JournalVoucher.class, new Id(voucher), true) : batch.voucher(voucher);
         }
 
         @Override
         public List<JournalVoucher> getVouchers() {
-            return vouchers(StoredObject.get(JournalVoucher.class, new Id(voucher), true));
+            return batch == null ? vouchers(StoredObject.get(JournalVoucher.class, new Id(voucher), true))
+                    : batch.vouchers(this);
         }
 
         static List<JournalVoucher> vouchers(JournalVoucher voucher) {
@@ -1011,7 +1132,10 @@ public class Account extends StoredObject implements OfEntity, HasName {
 
         @Override
         public String getType() {
-            return type.equals(BigInteger.ZERO) ? null : get(TransactionType.class, new Id(type)).getShortName();
+            if(type.equals(BigInteger.ZERO)) {
+                return null;
+            }
+            return batch == null ? get(TransactionType.class, new Id(type)).getShortName() : batch.type(type);
         }
     }
 
@@ -1019,7 +1143,187 @@ public class Account extends StoredObject implements OfEntity, HasName {
     private static final int BALANCE_COUNT = 10000;
     private static final Balances balances = new Balances();
 
-    static class Balances extends HashMap<Id, DatedBalance> {
+    /**
+     * Get the status of the account balance cache.
+     *
+     * @return Status (size, hits, misses and evictions).
+     */
+    public static String getBalanceCacheStatus() {
+        return "Accounts: " + balances.size() + ", Hits: " + Balances.hits.get() + ", Misses: "
+                + Balances.misses.get() + ", Evictions: " + Balances.evictions.get();
+    }
+
+    /**
+     * Consumer of the dated balances computed by {@link #forEachBalance(String, Date, BalanceConsumer)}.
+     */
+    @FunctionalInterface
+    public interface BalanceConsumer {
+
+        /**
+         * Accept the balance of an account.
+         *
+         * @param accountId Id of the account.
+         * @param balance Balance (in the currency of the account).
+         * @param localCurrencyBalance Balance in local currency.
+         */
+        void accept(Id accountId, BigDecimal balance, BigDecimal localCurrencyBalance);
+    }
+
+    /**
+     * Compute the dated balances of a set of accounts with a single query instead of querying account by account.
+     * For each account, the nearest balance snapshot on or before the date is taken and the ledger entries after
+     * that snapshot (up to the date) are added to it. If there is no snapshot, the opening balance is taken instead.
+     * The balances are passed to the consumer in the order of T_Family (and Id) as they are read, so they can be
+     * merged with a list of the same accounts retrieved in that order without holding them in memory.
+     * <p>Note: This doesn't check the working date of the entity - for the dates on or after the working date,
+     * the current balance of the account ({@link #getBalance()}) should be used.</p>
+     *
+     * <p>Warning: The condition is embedded in the SQL statement as it is, and it is not validated. It must be
+     * composed by the application code and should never contain values typed in by the users.</p>
+     *
+     * @param condition Condition to select the accounts (e.g. "SystemEntity=" + entity id). Could be
+     *                  <code>null</code> to select all the accounts.
+     * @param date Date.
+     * @param consumer Consumer of the balances.
+     */
+    public static void forEachBalance(String condition, Date date, BalanceConsumer consumer) {
+        RawSQL sql = new RawSQL();
+        try {
+            sql.execute(balancesSQL(condition, DatedBalance.d(date)) + " ORDER BY A.T_Family,A.Id");
+            ResultSet rs = sql.getResult();
+            while(!sql.eoq()) {
+                consumer.accept(new Id(rs.getBigDecimal(1)), rs.getBigDecimal(2), rs.getBigDecimal(3));
+                sql.skip();
+            }
+        } catch (Exception e) {
+            ApplicationServer.log(e);
+            throw new SORuntimeException("Unable to get dated balances");
+        } finally {
+            sql.close();
+        }
+    }
+
+    private static String balancesSQL(String condition, String d) {
+        return "SELECT A.Id,COALESCE(S.Balance,(A.OpeningBalance).Amount)+COALESCE(L.Amount,0) AS Balance,"
+                + "COALESCE(S.LocalCurrencyBalance,(A.LocalCurrencyOpeningBalance).Amount)+COALESCE(L.AmountLC,0)"
+                + " AS LocalCurrencyBalance,S.Date AS SnapshotDate FROM (SELECT Id,T_Family,OpeningBalance,LocalCurrencyOpeningBalance FROM core.Account"
+                + (condition == null || condition.isBlank() ? "" : (" WHERE " + condition)) + ") A"
+                + " LEFT JOIN LATERAL (SELECT Date,Balance,LocalCurrencyBalance FROM core.AccountBalance"
+                + " WHERE Account=A.Id AND Date<=" + d + " ORDER BY Date DESC LIMIT 1) S ON TRUE"
+                + " LEFT JOIN LATERAL (SELECT SUM(Amount) AS Amount,SUM(LocalCurrencyAmount) AS AmountLC"
+                + " FROM core.Ledger WHERE Account=A.Id AND Date<=" + d
+                + " AND (S.Date IS NULL OR Date>S.Date)) L ON TRUE";
+    }
+
+    /**
+     * Create balance checkpoints (snapshots in core.AccountBalance) of all the accounts as of the given date, with a
+     * single statement. Accounts that already have a snapshot for the date are skipped. With periodic (say,
+     * month-end) checkpoints, a dated balance at any history depth needs to add up the ledger entries of one period
+     * at the most.
+     *
+     * @param tm Transaction manager.
+     * @param date Date of the checkpoint.
+     * @return Number of checkpoints created.
+     * @throws Exception If the checkpoints can't be created.
+     */
+    public static int checkpointBalances(TransactionManager tm, Date date) throws Exception {
+        String d = DatedBalance.d(date);
+        int[] count = new int[1];
+        tm.transact(t -> {
+            RawSQL sql = ((DBTransaction)t).getSQL();
+            try {
+                // Postings in progress are waited for (see postBalances)
+                sql.execute("SELECT Id FROM core.Account ORDER BY Id FOR SHARE");
+                count[0] = sql.executeUpdate("INSERT INTO core.AccountBalance(Account,Date,Balance,"
+                        + "LocalCurrencyBalance) SELECT B.Id," + d + ",B.Balance,B.LocalCurrencyBalance FROM ("
+                        + balancesSQL(null, d) + ") B WHERE NOT EXISTS (SELECT 1 FROM core.AccountBalance WHERE "
+                        + "Account=B.Id AND Date=" + d + ")");
+            } finally {
+                sql.close();
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Compact the balance snapshots. All the snapshots before the given date are removed except the month-end
+     * checkpoints.
+     *
+     * @param tm Transaction manager.
+     * @param before Snapshots before this date are compacted.
+     * @return Number of snapshots removed.
+     * @throws Exception If the snapshots can't be removed.
+     */
+    public static int compactBalances(TransactionManager tm, Date before) throws Exception {
+        int[] count = new int[1];
+        tm.transact(t -> {
+            RawSQL sql = ((DBTransaction)t).getSQL();
+            try {
+                count[0] = sql.executeUpdate("DELETE FROM core.AccountBalance WHERE Date<" + DatedBalance.d(before)
+                        + " AND Date<>(date_trunc('month',Date)+INTERVAL '1 month'-INTERVAL '1 day')::date");
+            } finally {
+                sql.close();
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Shift the balance snapshots of the accounts affected by the ledger entries being posted (in the same
+     * transaction) so that the snapshots on or after the date of the entries remain valid, even for backdated
+     * postings. The cached balances of those accounts are discarded once the transaction is committed.
+     * <p>The rows of those accounts are locked (FOR UPDATE) until the transaction ends. Snapshots are built only while
+     * holding a share lock on the account row, so a snapshot can not be built on another connection from the ledger
+     * entries that are not yet committed.</p>
+     *
+     * @param t Transaction in which the entries are being posted.
+     * @param entries Ledger entries.
+     */
+    static void postBalances(DBTransaction t, List<JournalVoucher.Entry> entries) {
+        Map<Id, Map<Date, BigDecimal[]>> deltas = new HashMap<>();
+        BigDecimal[] delta;
+        Date jvDate;
+        for(JournalVoucher.Entry e: entries) {
+            // The date of the entry is copied when it is added, the JV date may be set only later
+            jvDate = e.journalVoucher.getDate();
+            if(jvDate == null) {
+                continue;
+            }
+            delta = deltas.computeIfAbsent(e.account.getId(), k -> new TreeMap<>())
+                    .computeIfAbsent(jvDate, k -> new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO });
+            delta[0] = delta[0].add(e.amount.getValue());
+            delta[1] = delta[1].add(e.localCurrencyAmount.getValue());
+        }
+        if(deltas.isEmpty()) {
+            return;
+        }
+        RawSQL sql = t.getSQL();
+        try {
+            StringBuilder ids = new StringBuilder();
+            deltas.keySet().forEach(id -> ids.append(ids.isEmpty() ? "" : ",").append(id));
+            sql.execute("SELECT Id FROM core.Account WHERE Id IN (" + ids + ") ORDER BY Id FOR UPDATE");
+            deltas.forEach((id, dates) -> dates.forEach((date, d) -> {
+                if(d[0].signum() != 0 || d[1].signum() != 0) {
+                    sql.executeUpdate("UPDATE core.AccountBalance SET Balance=Balance+(" + d[0].toPlainString()
+                            + "),LocalCurrencyBalance=LocalCurrencyBalance+(" + d[1].toPlainString()
+                            + ") WHERE Account=" + id + " AND Date>=" + DatedBalance.d(date));
+                }
+            }));
+        } finally {
+            sql.close();
+        }
+        Set<Id> ids = deltas.keySet();
+        t.addCommitListener(tran -> ids.forEach(Balances::removeAccount));
+    }
+
+    /**
+     * Cache of dated balances. Lookups don't lock the cache, and a balance that is not yet cached is built (from
+     * the database) only once even if requested concurrently - the other requests wait for that specific balance.
+     */
+    static class Balances extends ConcurrentHashMap<Id, DatedBalance> {
+
+        private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(),
+                evictions = new AtomicLong();
 
         private Balances() {
         }
@@ -1033,136 +1337,105 @@ public class Account extends StoredObject implements OfEntity, HasName {
         }
 
         private static Balance get(Id id, Date date) {
-            Balance b;
-            boolean clean = false;
-            synchronized (balances) {
-                DatedBalance db = balances.get(id);
-                if (db == null) {
-                    db = new DatedBalance();
-                    balances.put(id, db);
-                    clean = balances.size() > BALANCE_COUNT;
+            DatedBalance db = balances.get(id);
+            if(db == null) {
+                db = balances.computeIfAbsent(id, k -> new DatedBalance());
+                if(balances.size() > BALANCE_COUNT) {
+                    BalanceCacheCleaner.clean();
                 }
-                b = db.get(id, date);
-            }
-            if(clean) {
-                BalanceCacheCleaner.clean();
             }
-            return b;
-        }
-
-        private boolean kill(long age) {
-            age = System.currentTimeMillis() - age;
-            boolean killed = false, killedNow = true;
-            while (killedNow) {
-                killedNow = false;
-                for (Id id: keySet()) {
-                    if(get(id).time <= age) {
-                        killedNow = true;
-                        remove(id);
-                        break;
-                    }
+            return db.get(id, date);
+        }
+
+        /**
+         * Evict the accounts not accessed within the given age. If the cache is still over its capacity, the least
+         * recently accessed accounts are evicted.
+         */
+        private void evict(long age) {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<Id, Long>> entries = new ArrayList<>(size());
+            forEach((id, db) -> entries.add(Map.entry(id, db.time)));
+            entries.sort(Map.Entry.comparingByValue());
+            int excess = entries.size() - (BALANCE_COUNT * 9 / 10);
+            for(Map.Entry<Id, Long> e: entries) {
+                if(excess <= 0 && (now - e.getValue()) < age) {
+                    break;
                 }
-                if(!killed) {
-                    killed = killedNow;
+                if(remove(e.getKey()) != null) {
+                    evictions.incrementAndGet();
                 }
+                --excess;
             }
-            return killed;
         }
 
         public static void removeAccount(Id id) {
-            synchronized (balances) {
-                balances.remove(id);
-            }
+            balances.remove(id);
         }
     }
 
-    private static class DatedBalance extends HashMap<Date, Balance> {
+    private static class DatedBalance {
 
-        private long time = System.currentTimeMillis();
+        private final Map<Date, CompletableFuture<Balance>> dated = new ConcurrentHashMap<>();
+        private volatile long time = System.currentTimeMillis();
 
         public Balance get(Id id, Date date) {
             time = System.currentTimeMillis();
-            Balance b = get(date);
-            if(b == null) {
-                b = build(id, date);
-                put(date, b);
+            CompletableFuture<Balance> f = dated.get(date);
+            if(f == null) {
+                CompletableFuture<Balance> mine = new CompletableFuture<>();
+                f = dated.putIfAbsent(date, mine);
+                if(f == null) {
+                    Balances.misses.incrementAndGet();
+                    try {
+                        Balance b = build(id, date);
+                        mine.complete(b);
+                        return b;
+                    } catch(RuntimeException e) {
+                        dated.remove(date, mine);
+                        mine.completeExceptionally(e);
+                        throw e;
+                    }
+                }
+            }
+            Balances.hits.incrementAndGet();
+            try {
+                return f.join();
+            } catch(CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re
+                        : new SORuntimeException("Unable to get dated balances");
             }
-            return b;
         }
 
+        /**
+         * Build the balance as of the given date with a single read: the nearest snapshot on or before the date plus
+         * the sum of the ledger entries after it. The result is saved as a snapshot for the date (if not already
+         * one). The account row is share-locked while doing this so that a posting in progress is waited for.
+         */
         private Balance build(Id id, Date date) {
             RawSQL sql = new RawSQL();
+            sql.setAutoCommit(false);
             try {
-                String query = "SELECT Balance,LocalCurrencyBalance FROM core.AccountBalance WHERE Account=" + id
-                        + " AND Date=";
-                ResultSet rs;
-                sql.execute(query + d(date));
-                if(!sql.eoq()) {
-                    rs = sql.getResult();
-                    return new Balance(rs.getBigDecimal(1), rs.getBigDecimal(2));
-                }
-                String sum = "SELECT SUM(Amount),SUM(LocalCurrencyAmount) FROM core.Ledger WHERE Account=" + id
-                        + " AND Date";
-                Date d;
-                BigDecimal b, bLC, tb, tbLC;
-                sql.execute("SELECT Min(Date) FROM core.AccountBalance WHERE Account=" + id + " AND Date>"
-                        + d(date));
-                rs = sql.getResult();
-                d = rs.getDate(1);
-                if(!rs.wasNull()) {
-                    sql.execute(query + d(d));
-                    rs = sql.getResult();
-                    b = rs.getBigDecimal(1);
-                    bLC = rs.getBigDecimal(2);
-                    sql.execute(sum + ">" + d(date) + " AND Date<=" + d(d));
-                    rs = sql.getResult();
-                    tb = rs.getBigDecimal(1);
-                    if(!rs.wasNull()) {
-                        tbLC = rs.getBigDecimal(2);
-                        b = b.subtract(tb);
-                        bLC = bLC.subtract(tbLC);
-                    }
-                    return insert(sql, b, bLC, id, date);
+                sql.execute("SELECT Id FROM core.Account WHERE Id=" + id + " FOR SHARE");
+                sql.execute(balancesSQL("Id=" + id, d(date)));
+                if(sql.eoq()) {
+                    throw new SOException("Account not found: " + id);
                 }
-                sql.execute("SELECT Max(Date) FROM core.AccountBalance WHERE Account=" + id + " AND Date<"
-                        + d(date));
-                rs = sql.getResult();
-                d = rs.getDate(1);
-                if(!rs.wasNull()) {
-                    sql.execute(query + d(d));
-                    rs = sql.getResult();
-                    b = rs.getBigDecimal(1);
-                    bLC = rs.getBigDecimal(2);
-                    sql.execute(sum + "<=" + d(date) + " AND Date>" + d(d));
-                    //noinspection DuplicatedCode
-                    rs = sql.getResult();
-                    tb = rs.getBigDecimal(1);
-                    if(!rs.wasNull()) {
-                        tbLC = rs.getBigDecimal(2);
-                        b = b.add(tb);
-                        bLC = bLC.add(tbLC);
-                    }
-                    return insert(sql, b, bLC, id, date);
-                }
-                sql.execute("SELECT (OpeningBalance).Amount,(LocalCurrencyOpeningBalance).Amount FROM core.Account WHERE Id="
-                        + id);
-                rs = sql.getResult();
-                b = rs.getBigDecimal(1);
-                bLC = rs.getBigDecimal(2);
-                sql.execute(sum + "<=" + d(date));
-                //noinspection DuplicatedCode
-                rs = sql.getResult();
-                tb = rs.getBigDecimal(1);
-                if(!rs.wasNull()) {
-                    tbLC = rs.getBigDecimal(2);
-                    b = b.add(tb);
-                    bLC = bLC.add(tbLC);
+                ResultSet rs = sql.getResult();
+                Balance b = new Balance(rs.getBigDecimal(2), rs.getBigDecimal(3));
+                Date snapshot = rs.getDate(4);
+                if(snapshot == null || !d(snapshot).equals(d(date))) {
+                    sql.executeUpdate("INSERT INTO core.AccountBalance(Account,Date,Balance,LocalCurrencyBalance) "
+                            + "VALUES(" + id + "," + d(date) + "," + b.balance.toPlainString() + ","
+                            + b.balanceLC.toPlainString() + ")");
                 }
-                return insert(sql, b, bLC, id, date);
+                sql.commit();
+                return b;
             } catch (Exception e) {
+                sql.rollback();
                 ApplicationServer.log(e);
                 throw new SORuntimeException("Unable to get dated balances");
             } finally {
+                sql.setAutoCommit(true);
                 sql.close();
             }
         }
@@ -1170,46 +1443,26 @@ public class Account extends StoredObject implements OfEntity, HasName {
         private static String d(Date date) {
             return "'" + Database.format(date) + "'";
         }
-
-        private static Balance insert(RawSQL sql, BigDecimal b, BigDecimal bLC, Id id, Date date) {
-            sql.executeUpdate("INSERT INTO core.AccountBalance(Account,Date,Balance,LocalCurrencyBalance) VALUES("
-                    + id + "," + d(date) + "," + b.toPlainString() + ","
-                    + bLC.toPlainString() + ")");
-            return new Balance(b, bLC);
-        }
     }
 
     private record Balance(BigDecimal balance, BigDecimal balanceLC) {}
 
     private static class BalanceCacheCleaner implements Runnable {
 
-        private static boolean cleaning = false;
+        private static final AtomicBoolean cleaning = new AtomicBoolean(false);
 
-        private synchronized static void clean() {
-            if(cleaning) {
-                return;
+        private static void clean() {
+            if(cleaning.compareAndSet(false, true)) {
+                Thread.ofVirtual().start(new BalanceCacheCleaner());
             }
-            cleaning = true;
-            Thread.ofVirtual().start(new BalanceCacheCleaner());
         }
 
         @Override
         public void run() {
-            synchronized (balances) {
-                runClean();
-                cleaning = false;
-            }
-        }
-
-        private void runClean() {
-            long age = BALANCE_LIFE;
-            while (true) {
-                if(balances.kill(age) && balances.size() < BALANCE_COUNT) {
-                    return;
-                }
-                if((age = age >> 1) == 0) {
-                    return;
-                }
+            try {
+                balances.evict(BALANCE_LIFE);
+            } finally {
+                cleaning.set(false);
             }
         }
     }
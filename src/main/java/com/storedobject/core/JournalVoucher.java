@@ -542,6 +542,7 @@ public class JournalVoucher extends StoredObject implements Financial, OfEntity,
             throw new Invalid_State("No entries in JV");
         }
         t.entries.addAll(entries);
+        Account.postBalances(t, entries);
         if(excess.isEmpty()) {
             return;
         }
@@ -0,0 +1,230 @@
+package com.storedobject.core;
+
+import com.storedobject.common.SORuntimeException;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Keyset (seek) pagination of the objects retrieved by a {@link QueryBuilder}. Instead of skipping the rows of the
+ * previous pages (OFFSET), the values of the "order by" columns of the last row retrieved are remembered, and the
+ * next page is retrieved by the condition <code>(order by columns) &gt; (last values)</code>. So, retrieving a deep
+ * page costs the same as retrieving the first page.
+ * <p>The "order by" columns should all be in the same direction (all ascending or all descending) and should not
+ * contain null values. "Id" is added as the last "order by" column (if not already present) so that the ordering
+ * is unique. The "order by" columns should be attributes of the class because the key values are taken from the last
+ * object of each page.</p>
+ * <p>Example:</p>
+ * <pre>
+ * KeysetPager&lt;Person&gt; pager = QueryBuilder.from(Person.class).orderBy("FirstName").pager(500);
+ * while(pager.hasMore()) {
+ *     List&lt;Person&gt; page = pager.nextPage();
+ *     ...
+ * }
+ * </pre>
+ * <p>{@link #list()} returns an {@link ObjectIterator} that retrieves the pages as it is iterated, and that can be
+ * used wherever an {@link ObjectIterator} is accepted (for example, to load an {@link ObjectCache}).</p>
+ *
+ * @param <T> Type of objects.
+ * @author Syam
+ */
+public final class KeysetPager<T extends StoredObject> {
+
+    private final Class<T> objectClass;
+    private final String where, orderBy, keyColumns, keyCondition;
+    private final Object[] parameters;
+    private final boolean any;
+    private final Transaction transaction;
+    private final int pageSize, keyCount;
+    private final Method[] keyMethods;
+    private Object[] lastKey;
+    private boolean more = true;
+
+    KeysetPager(Class<T> objectClass, String where, Object[] parameters, String orderBy, boolean any,
+                Transaction transaction, int pageSize) {
+        if(pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        this.objectClass = objectClass;
+        this.where = where == null || where.isBlank() ? null : where;
+        this.parameters = parameters == null ? new Object[0] : parameters;
+        this.any = any;
+        this.transaction = transaction;
+        this.pageSize = pageSize;
+        List<String> columns = new ArrayList<>();
+        Boolean descending = null;
+        boolean id = false;
+        if(orderBy != null) {
+            for(String c: orderBy.split(",")) {
+                c = c.trim();
+                if(c.isEmpty()) {
+                    continue;
+                }
+                String u = c.toUpperCase();
+                boolean desc = u.endsWith(" DESC");
+                if(desc || u.endsWith(" ASC")) {
+                    c = c.substring(0, c.lastIndexOf(' ')).trim();
+                }
+                if(descending == null) {
+                    descending = desc;
+                } else if(descending != desc) {
+                    throw new IllegalArgumentException("Mixed ordering is not supported: " + orderBy);
+                }
+                id = id || c.equalsIgnoreCase("Id") || c.equalsIgnoreCase("T.Id");
+                columns.add(c);
+            }
+        }
+        boolean desc = descending != null && descending;
+        if(!id) {
+            columns.add("Id");
+        }
+        ClassAttribute<?> ca = ClassAttribute.get(objectClass);
+        keyMethods = new Method[columns.size()];
+        for(int i = 0; i < keyMethods.length; i++) {
+            String c = columns.get(i);
+            if(c.regionMatches(true, 0, "T.", 0, 2)) {
+                c = c.substring(2);
+            }
+            if(c.equalsIgnoreCase("Id")) {
+                continue;
+            }
+            if((keyMethods[i] = ca.getMethod(c)) == null) {
+                throw new IllegalArgumentException("Not an attribute: " + c);
+            }
+        }
+        String direction = desc ? " DESC" : "";
+        StringBuilder order = new StringBuilder(), key = new StringBuilder(), values = new StringBuilder();
+        for(String c: columns) {
+            if(!order.isEmpty()) {
+                order.append(',');
+                key.append(',');
+                values.append(',');
+            }
+            order.append(c).append(direction);
+            key.append(c);
+            values.append('?');
+        }
+        this.orderBy = order.toString();
+        this.keyColumns = key.toString();
+        this.keyCount = columns.size();
+        this.keyCondition = keyCount == 1 ? (key + (desc ? "<?" : ">?"))
+                : ("(" + key + ")" + (desc ? "<" : ">") + "(" + values + ")");
+    }
+
+    /**
+     * Check whether more pages may be available.
+     *
+     * @return True if the last page is not yet retrieved.
+     */
+    public boolean hasMore() {
+        return more;
+    }
+
+    /**
+     * Get the values of the "order by" columns of the last row retrieved so far. This may be stored and used later
+     * to continue from the same position (see {@link #seek(Object...)}).
+     *
+     * @return Last key (<code>null</code> if nothing is retrieved yet).
+     */
+    public Object[] getLastKey() {
+        return lastKey == null ? null : lastKey.clone();
+    }
+
+    /**
+     * Position the pager after the given key.
+     *
+     * @param lastKey Values of the "order by" columns (including "Id" if it was added). If <code>null</code>
+     *                is passed, the pager is positioned at the beginning.
+     * @return Self-reference.
+     */
+    public KeysetPager<T> seek(Object... lastKey) {
+        if(lastKey != null && lastKey.length != keyCount) {
+            throw new IllegalArgumentException("Key should contain " + keyCount + " values: " + keyColumns);
+        }
+        this.lastKey = lastKey == null ? null : lastKey.clone();
+        more = true;
+        return this;
+    }
+
+    /**
+     * Position the pager at the beginning.
+     *
+     * @return Self-reference.
+     */
+    public KeysetPager<T> reset() {
+        return seek((Object[]) null);
+    }
+
+    /**
+     * Retrieve the next page.
+     *
+     * @return Objects of the next page (empty if no more objects are available).
+     */
+    public List<T> nextPage() {
+        if(!more) {
+            return new ArrayList<>();
+        }
+        String condition = where;
+        Object[] params = parameters;
+        if(lastKey != null) {
+            condition = condition == null ? keyCondition : ("(" + condition + ") AND " + keyCondition);
+            params = Arrays.copyOf(parameters, parameters.length + keyCount);
+            System.arraycopy(lastKey, 0, params, parameters.length, keyCount);
+        }
+        List<T> page;
+        try(ObjectIterator<T> objects = QueryBuilder.from(objectClass).where(condition, params).orderBy(orderBy)
+                .any(any).transaction(transaction).limit(pageSize).list()) {
+            page = new ArrayList<>(objects.toList());
+        }
+        if(page.size() < pageSize) {
+            more = false;
+        }
+        if(!page.isEmpty()) {
+            lastKey = key(page.getLast());
+        }
+        return page;
+    }
+
+    private Object[] key(T object) {
+        Object[] key = new Object[keyCount];
+        try {
+            for(int i = 0; i < keyCount; i++) {
+                key[i] = keyMethods[i] == null ? object.getId() : keyMethods[i].invoke(object);
+            }
+        } catch(ReflectiveOperationException e) {
+            throw new SORuntimeException(e);
+        }
+        return key;
+    }
+
+    /**
+     * Get an iterator of all the remaining objects. Pages are retrieved as the iterator advances.
+     *
+     * @return Iterator.
+     */
+    public ObjectIterator<T> list() {
+        return ObjectIterator.create(new Iterator<>() {
+
+            private Iterator<T> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while(!page.hasNext()) {
+                    if(!more) {
+                        return false;
+                    }
+                    page = nextPage().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        });
+    }
+}
@@ -2,9 +2,13 @@ package com.storedobject.core;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.storedobject.core.annotation.Column;
 import com.storedobject.core.annotation.SetNotAllowed;
+import com.storedobject.job.MessageSender;
 
 public abstract class Message extends StoredObject {
 
@@ -169,6 +173,20 @@ public abstract class Message extends StoredObject {
         sent = false;
     }
 
+    @Override
+    public void saved() throws Exception {
+        super.saved();
+        if(!sent && error == 0) { // Wake up the message senders once committed
+            Class<? extends Message> messageClass = getClass();
+            Transaction transaction = getTransaction();
+            if(transaction == null) { // Direct update, already in the database
+                MessageSender.kick(messageClass);
+            } else {
+                transaction.addCommitListener(t -> MessageSender.kick(messageClass));
+            }
+        }
+    }
+
     @Override
 	public void validateData(TransactionManager tm) throws Exception {
         if(!deleted()) {
@@ -184,4 +202,50 @@ public abstract class Message extends StoredObject {
         }
         super.validateData(tm);
     }
+
+    /**
+     * Save the delivery status (set via {@link #sent(int)} or {@link #setError(int)}) of a batch of messages. Instead
+     * of saving the messages one by one, the messages with the same status are updated together, with a single
+     * statement per message class and status, in one transaction.
+     * <p>Note: Only the columns Sent, SentAt and Error are updated (the same way
+     * {@link #validateData(TransactionManager)} would have set them) and the messages are not validated otherwise.
+     * So, this should be used only for the status updates of the messages that are already saved.</p>
+     *
+     * @param tm Transaction manager.
+     * @param messages Messages.
+     * @return Same as the return value of {@link TransactionManager#transact(TransactionManager.Transact)}.
+     * @throws Exception If the status can't be saved. None of the messages will be updated in that case.
+     */
+    public static int saveStatus(TransactionManager tm, Collection<? extends Message> messages) throws Exception {
+        Map<String, StringBuilder> updates = new LinkedHashMap<>();
+        Timestamp now = DateUtility.now();
+        boolean sent;
+        String key;
+        for(Message m: messages) {
+            sent = m.error == 1 ? false : (m.error > 2 || m.sent);
+            ClassAttribute<?> ca = ClassAttribute.get(m);
+            key = ca.moduleName + "." + ca.tableName + " SET Sent=" + sent + ",Error=" + m.error
+                    + (sent ? ",SentAt='" + Database.formatWithTime(now) + "'" : "");
+            StringBuilder ids = updates.get(key);
+            if(ids == null) {
+                updates.put(key, new StringBuilder().append(m.getId()));
+            } else {
+                ids.append(',').append(m.getId());
+            }
+        }
+        if(updates.isEmpty()) {
+            return 0;
+        }
+        return tm.transact(t -> {
+            RawSQL sql = ((DBTransaction)t).getSQL();
+            try {
+                for(Map.Entry<String, StringBuilder> u: updates.entrySet()) {
+                    sql.executeUpdate("UPDATE " + u.getKey() + ",TranId=" + t.getId() + " WHERE Id IN (" + u.getValue()
+                            + ")");
+                }
+            } finally {
+                sql.close();
+            }
+        });
+    }
 }
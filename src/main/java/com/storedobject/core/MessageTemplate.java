@@ -13,6 +13,7 @@ import com.storedobject.sms.SMSMessage;
 import com.storedobject.telegram.Telegram;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
 import java.util.*;
 
 public final class MessageTemplate extends StoredObject {
@@ -333,62 +334,55 @@ public final class MessageTemplate extends StoredObject {
                                 Object... messageParameters) throws Throwable {
         List<Id> mIds = new ArrayList<>();
         boolean any;
-        Map<Id, LoginMessage> mm = new HashMap<>();
-        LoginMessage m;
         templateName = name(templateName);
         List<MessageTemplate> templates = listAll(templateName);
         List<Message> toAttach = new ArrayList<>();
-        boolean sent;
         try {
             if(templates.isEmpty()) {
                 throw new SOException("No such template - " + templateName);
             }
-            for(Person person : persons) {
-                any = false;
-                StringBuilder channels = new StringBuilder();
-                for(MessageTemplate template : templates) {
-                    if(template.delivery == 2) { // Application
-                        m = mm.get(template.getId());
+            List<Person> people = new ArrayList<>();
+            persons.forEach(people::add);
+            boolean[] reached = new boolean[people.size()];
+            StringBuilder[] channels = new StringBuilder[people.size()];
+            // Template by template so that the common parts are rendered once and the messages are saved together
+            for(MessageTemplate template : templates) {
+                if(template.delivery == 2) { // Application
+                    LoginMessage m = null;
+                    for(int i = 0; i < reached.length; i++) {
                         if(m == null) {
                             m = LoginMessage.alert(tc.getTransaction(),
-                                    template.createMessage(person, messageParameters),
-                                    person, template.createProcessorLogic(messageParameters),
+                                    template.createMessage(people.get(i), messageParameters),
+                                    people.get(i), template.createProcessorLogic(messageParameters),
                                     template.createGeneratedBy(messageParameters),
                                     template.createValidity(messageParameters));
-                            mm.put(template.getId(), m);
                             mIds.add(m.getId());
                         } else {
-                            m.addPersons(tc.getTransaction(), ObjectIterator.create(person));
+                            m.addPersons(tc.getTransaction(), ObjectIterator.create(people.get(i)));
                         }
-                        tc.commit();
-                        any = true;
+                        reached[i] = true;
+                    }
+                    tc.commit();
+                    continue;
+                }
+                boolean[] sent = template.sendAll(tc, people, toAttach, messageParameters);
+                for(int i = 0; i < sent.length; i++) {
+                    if(sent[i]) {
+                        reached[i] = true;
                     } else {
-                        try {
-                            sent = template.sendOne(tc, person, toAttach, messageParameters);
-                        } catch (SOException e) {
-                            if(tc.isActive()) {
-                                tc.rollback(e);
-                            }
-                            tc.clear();
-                            sent = false;
-                        }
-                        if(sent) {
-                            any = true;
+                        if(channels[i] == null) {
+                            channels[i] = new StringBuilder();
                         } else {
-                            if(!channels.isEmpty()) {
-                                channels.append(", ");
-                            }
-                            channels.append(template.getDeliveryValue());
+                            channels[i].append(", ");
                         }
+                        channels[i].append(template.getDeliveryValue());
                     }
                 }
-                if(tc.isError()) {
-                    tc.getManager().log(tc.getError());
-                    tc.clear();
-                }
-                if(!any) {
-                    tc.getManager().log("No message sent to " + person + " for Template " + templateName
-                            + " (Channels: " + channels + ")");
+            }
+            for(int i = 0; i < reached.length; i++) {
+                if(!reached[i]) {
+                    tc.getManager().log("No message sent to " + people.get(i) + " for Template " + templateName
+                            + " (Channels: " + (channels[i] == null ? "" : channels[i]) + ")");
                 }
             }
         } finally {
@@ -441,104 +435,206 @@ public final class MessageTemplate extends StoredObject {
         return mIds;
     }
 
-    private boolean sendOne(TransactionControl tc, Person person, List<Message> toAttach, Object... messageParameters)
-            throws Throwable {
-        try {
-            if(person == null) {
-                tc.rollback("Person not specified");
-                return false;
-            }
-            Message message;
-            switch(delivery) {
-                case 0 -> // SMS
-                        message = new SMSMessage();
-                case 1 -> {// Email
-                    try {
-                        message = Mail.createAlert(tc.getManager());
-                    } catch (SOException e) {
-                        tc.rollback(e.getEndUserMessage());
-                        return false;
+    /**
+     * Create the messages of this template for all the persons and save them in a single transaction. If that
+     * fails, they are saved one by one.
+     *
+     * @return Per person flags indicating whether the message was created (or was already sent recently).
+     */
+    private boolean[] sendAll(TransactionControl tc, List<Person> persons, List<Message> toAttach,
+                              Object... messageParameters) throws Throwable {
+        boolean[] sent = new boolean[persons.size()];
+        // Rendered only once if the template is not personalized
+        String text = template.contains("<P>") || template.contains("<TP>") ? null
+                : createMessage(null, messageParameters);
+        List<Message> messages = new ArrayList<>();
+        List<Integer> index = new ArrayList<>();
+        Message message;
+        for(int i = 0; i < sent.length; i++) {
+            try {
+                message = createOne(tc, persons.get(i), text, messageParameters);
+            } catch (SOException e) {
+                if(tc.isActive()) {
+                    tc.rollback(e);
+                }
+                message = null;
+            }
+            if(tc.isError()) {
+                tc.getManager().log(tc.getError());
+                tc.clear();
+            }
+            if(message != null) {
+                messages.add(message);
+                index.add(i);
+            }
+        }
+        if(messages.isEmpty()) {
+            return sent;
+        }
+        Set<String> recent = recent(tc, messages);
+        if(recent == null) {
+            return sent;
+        }
+        for(int i = messages.size() - 1; i >= 0; i--) {
+            message = messages.get(i);
+            if(recent.contains(message.getSentToId() + "/" + message.getMessage())) {
+                sent[index.get(i)] = true;
+                messages.remove(i);
+                index.remove(i);
+            }
+        }
+        boolean saved = true;
+        for(Message m: messages) {
+            if(!m.save(tc)) {
+                saved = false;
+                break;
+            }
+        }
+        if(saved && tc.commit()) {
+            index.forEach(i -> sent[i] = true);
+        } else {
+            tc.rollback();
+            tc.clear();
+            for(int i = 0; i < messages.size(); i++) {
+                message = messages.get(i);
+                if(message.save(tc) && tc.commit()) {
+                    sent[index.get(i)] = true;
+                } else {
+                    if(tc.isError()) {
+                        tc.getManager().log(tc.getError());
                     }
+                    tc.rollback();
+                    tc.clear();
+                    messages.set(i, null);
                 }
-                case 2 -> { // Application
-                    LoginMessage.alert(tc.getTransaction(), createMessage(person, messageParameters), person,
-                            createProcessorLogic(messageParameters), createGeneratedBy(messageParameters),
-                            createValidity(messageParameters));
-                    return true;
+            }
+        }
+        for(Message m: messages) {
+            if(m instanceof Mail) {
+                toAttach.add(m);
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Find the messages that were already sent to the same persons within the last day (in one query).
+     *
+     * @return Set of "person Id/message" strings or <code>null</code> if the check failed (the error is logged and
+     * the batch should not be sent).
+     */
+    private static Set<String> recent(TransactionControl tc, List<Message> messages) {
+        Message first = messages.getFirst();
+        String text = first.getMessage();
+        boolean common = messages.stream().allMatch(m -> m.getMessage().equals(text));
+        StringBuilder c = new StringBuilder("SentTo IN (");
+        Set<Id> ids = new HashSet<>();
+        for(Message m: messages) {
+            if(ids.add(m.getSentToId())) {
+                if(ids.size() > 1) {
+                    c.append(',');
                 }
-                case 3 -> // WhatsApp
-                        message = new WhatsAppMessage();
-                case 4 -> // Telegram
-                        message = new Telegram();
-                default -> {
-                    tc.rollback("Don't know how to handle messages of type '" + getDeliveryValue() + "'");
-                    return false;
+                c.append(m.getSentToId());
+            }
+        }
+        c.append(") AND T_Family=").append(ClassAttribute.get(first).getFamily()).append(" AND CreatedAt>'")
+                .append(Database.formatWithTime(DateUtility.addDay(DateUtility.now(), -1))).append('\'');
+        if(common) {
+            c.append(" AND Message='").append(text.replace("'", "''")).append('\'');
+        }
+        Set<String> recent = new HashSet<>();
+        try(Query q = query(first.getClass(), "SentTo,Message", c.toString())) {
+            for(ResultSet rs: q) {
+                recent.add(new Id(rs.getBigDecimal(1)) + "/" + rs.getString(2));
+            }
+        } catch(Exception e) {
+            tc.getManager().log(e);
+            return null;
+        }
+        return recent;
+    }
+
+    /**
+     * Create a message (not yet saved) for a person.
+     *
+     * @param text Message text if already rendered, otherwise <code>null</code>.
+     * @return Message or <code>null</code> if the message can't be created for the person.
+     */
+    private Message createOne(TransactionControl tc, Person person, String text, Object... messageParameters)
+            throws Throwable {
+        if(person == null) {
+            tc.rollback("Person not specified");
+            return null;
+        }
+        Message message;
+        switch(delivery) {
+            case 0 -> // SMS
+                    message = new SMSMessage();
+            case 1 -> {// Email
+                try {
+                    message = Mail.createAlert(tc.getManager());
+                } catch (SOException e) {
+                    tc.rollback(e.getEndUserMessage());
+                    return null;
                 }
             }
-            Contact contact = person.getContactObject(contactTypeId);
-            if(contact == null) {
-                return false;
-            }
-            message.setMessage(createMessage(person, messageParameters));
-            if(exists(message.getClass(), "SentTo=" + person.getId() + " AND T_Family="
-                    + ClassAttribute.get(message).getFamily()
-                    + " AND CreatedAt>'"
-                    + Database.formatWithTime(DateUtility.addDay(DateUtility.now(), -1))
-                    + "' AND Message='" + message.getMessage().replace("'", "''") + "'")) {
-                return true;
-            }
-            message.setSentTo(person);
-            switch(delivery) {
-                case 0, 3 -> { // SMS, WhatsApp
-                    long mobile;
-                    try {
-                        mobile = HasContacts.phoneToNumber(contact.getContactValue());
-                    } catch (Throwable error) {
-                        tc.rollback("Invalid mobile number '" + contact.getValue() +
-                                "' configured to send SMS/WhatsApp for " + person.toDisplay());
-                        return false;
-                    }
-                    //noinspection ConstantConditions
-                    ((SMSMessage) message).setMobileNumber(mobile);
+            case 3 -> // WhatsApp
+                    message = new WhatsAppMessage();
+            case 4 -> // Telegram
+                    message = new Telegram();
+            default -> {
+                tc.rollback("Don't know how to handle messages of type '" + getDeliveryValue() + "'");
+                return null;
+            }
+        }
+        Contact contact = person.getContactObject(contactTypeId);
+        if(contact == null) {
+            return null;
+        }
+        message.setMessage(text == null ? createMessage(person, messageParameters) : text);
+        message.setSentTo(person);
+        switch(delivery) {
+            case 0, 3 -> { // SMS, WhatsApp
+                long mobile;
+                try {
+                    mobile = HasContacts.phoneToNumber(contact.getContactValue());
+                } catch (Throwable error) {
+                    tc.rollback("Invalid mobile number '" + contact.getValue() +
+                            "' configured to send SMS/WhatsApp for " + person.toDisplay());
+                    return null;
                 }
-                case 1 -> { // Email
-                    @SuppressWarnings("ConstantConditions") Mail mail = (Mail) message;
-                    mail.setToAddress(contact.getContactValue());
-                    mail.setSubject(createSubject(messageParameters));
-                    mail.setReplyToAddress(createEmailAddress(messageParameters));
-                    SenderGroup sg = createSenderGroup(messageParameters);
-                    if(sg != null) {
-                        mail.setSenderGroup(sg);
-                    }
-                    toAttach.add(mail);
+                ((SMSMessage) message).setMobileNumber(mobile);
+            }
+            case 1 -> { // Email
+                Mail mail = (Mail) message;
+                mail.setToAddress(contact.getContactValue());
+                mail.setSubject(createSubject(messageParameters));
+                mail.setReplyToAddress(createEmailAddress(messageParameters));
+                SenderGroup sg = createSenderGroup(messageParameters);
+                if(sg != null) {
+                    mail.setSenderGroup(sg);
                 }
-                case 4 -> { // Telegram
-                    String tn = contact.getContactValue();
-                    if("Telegram".equals(tn)) {
-                        return false;
-                    }
-                    int p = tn.indexOf('/');
-                    if(p > 0) {
-                        tn = tn.substring(0, p);
-                        if(!StringUtility.isDigit(tn)) {
-                            p = -1;
-                        }
-                    }
-                    if(p <= 0) {
-                        tc.rollback("Invalid telegram contact for " + person.toDisplay());
+            }
+            case 4 -> { // Telegram
+                String tn = contact.getContactValue();
+                if("Telegram".equals(tn)) {
+                    return null;
+                }
+                int p = tn.indexOf('/');
+                if(p > 0) {
+                    tn = tn.substring(0, p);
+                    if(!StringUtility.isDigit(tn)) {
+                        p = -1;
                     }
-                    //noinspection DataFlowIssue
-                    ((Telegram)message).setTelegramNumber(Long.parseLong(tn));
                 }
+                if(p <= 0) {
+                    tc.rollback("Invalid telegram contact for " + person.toDisplay());
+                    return null;
+                }
+                ((Telegram)message).setTelegramNumber(Long.parseLong(tn));
             }
-            if(!message.save(tc) || !tc.commit()) {
-                tc.throwError();
-            }
-            return true;
-        } catch(Throwable error) {
-            tc.rollback();
-            throw error;
         }
+        return message;
     }
 
     /**
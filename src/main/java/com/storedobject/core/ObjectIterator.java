@@ -5,6 +5,9 @@ import com.storedobject.common.SORuntimeException;
 import javax.annotation.Nonnull;
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.*;
 import java.util.stream.Stream;
 
@@ -247,6 +250,23 @@ public abstract class ObjectIterator<O extends StoredObject> implements Iterator
         return this;
     }
 
+    /**
+     * Read ahead. The objects are read from this iterator (and constructed) on a separate virtual thread while the
+     * caller processes the ones already read, so that the DB fetch is not on the caller's critical path. At most
+     * "size" objects are kept in the read-ahead buffer. If an error occurs while reading, it is thrown to the caller
+     * when it reaches that position.
+     * <p>Note: Please make sure that you call the {@link #close()} method on the resulting instance if it is not
+     * iterated through fully. Otherwise, the reading thread will be blocked on the buffer.</p>
+     *
+     * @param size Size of the read-ahead buffer. If zero or negative, this instance is returned as is.
+     * @return Read-ahead iterator.
+     * There is no need to maintain any references to this instance after this operation for the purpose of closing etc.
+     * and you need to take care of the resulting instance only.
+     */
+    public ObjectIterator<O> prefetch(int size) {
+        return size <= 0 ? this : new Prefetch<>(this, size);
+    }
+
     /**
      * Get the count.
      * <p>Note: This is a terminal operation and the iterator is closed after this operation.</p>
@@ -725,4 +745,105 @@ public abstract class ObjectIterator<O extends StoredObject> implements Iterator
                                                                             Function<FROM, TO> converter) {
         return create();
     }
+
+    private static final class Prefetch<O extends StoredObject> extends ObjectIterator<O> {
+
+        private static final Object END = new Object();
+        private final ObjectIterator<O> source;
+        private final BlockingQueue<Object> buffer;
+        private volatile Throwable error;
+        private volatile boolean closed = false;
+        private Object next;
+
+        private Prefetch(ObjectIterator<O> source, int size) {
+            this.source = source;
+            this.buffer = new ArrayBlockingQueue<>(size);
+            Thread.ofVirtual().name("Prefetch").start(this::read);
+        }
+
+        private void read() {
+            try {
+                while(!closed && source.hasNext()) {
+                    if(!offer(source.next())) {
+                        return;
+                    }
+                }
+            } catch(InterruptedException ignored) {
+            } catch(Throwable e) {
+                error = e;
+            } finally {
+                source.close();
+                try {
+                    offer(END);
+                } catch(InterruptedException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Wait for space in the buffer, giving up if closed in the meantime. (The reader is never interrupted
+         * because interrupting a thread that is reading from the DB may break its connection).
+         */
+        private boolean offer(Object object) throws InterruptedException {
+            while(!closed) {
+                if(buffer.offer(object, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next == null) {
+                if(closed) {
+                    return false;
+                }
+                try {
+                    next = buffer.take();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    return false;
+                }
+            }
+            if(next != END) {
+                return true;
+            }
+            closed = true;
+            Throwable e = error;
+            if(e != null) {
+                error = null;
+                throw e instanceof RuntimeException re ? re : new SORuntimeException(e);
+            }
+            return false;
+        }
+
+        @Override
+        public O next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            @SuppressWarnings("unchecked") O object = (O) next;
+            next = null;
+            return object;
+        }
+
+        @Override
+        public void forEach(Consumer<? super O> consumer) {
+            while(hasNext()) {
+                consumer.accept(next());
+            }
+        }
+
+        @Override
+        public void close() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            next = null;
+            buffer.clear(); // The reader, if waiting for space, sees that it is closed
+        }
+    }
 }
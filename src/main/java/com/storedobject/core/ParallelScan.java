@@ -0,0 +1,272 @@
+package com.storedobject.core;
+
+import com.storedobject.common.SORuntimeException;
+
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Parallel execution of the terminal operations (sum, average, count, max, min etc.) over the objects retrieved by a
+ * {@link QueryBuilder}. The range of the Ids of the matching objects is split into partitions and each partition is
+ * scanned separately (using its own DB connection) in a {@link ForkJoinPool}. The partial results are merged when all
+ * partitions are completed.
+ * <p>The number of partitions scanned concurrently is limited by the degree of parallelism of the scan and also by
+ * a system-wide connection budget (see {@link #setConnectionBudget(int)}), so that the parallel scans together do not
+ * use more DB connections than provisioned.</p>
+ * <p>Note: The functions passed to the terminal operations are invoked from multiple threads concurrently. Also, if
+ * the {@link QueryBuilder} has a transaction set, the scan is not parallelized because the transaction's connection
+ * can not be shared.</p>
+ * <p>Example:</p>
+ * <pre>
+ * double total = QueryBuilder.from(InventoryItem.class).where("Quantity>0").parallel(8)
+ *         .sum(item -&gt; item.getCost().getValue().doubleValue());
+ * </pre>
+ *
+ * @param <T> Type of objects.
+ * @author Syam
+ */
+public final class ParallelScan<T extends StoredObject> {
+
+    private static final Object lock = new Object();
+    private static volatile int budget = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static Semaphore connections = new Semaphore(budget);
+    private final Class<T> objectClass;
+    private final String where;
+    private final Object[] parameters;
+    private final boolean any;
+    private final Transaction transaction;
+    private final int parallelism;
+
+    ParallelScan(Class<T> objectClass, String where, Object[] parameters, boolean any, Transaction transaction,
+                 int parallelism) {
+        if(parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid degree of parallelism: " + parallelism);
+        }
+        this.objectClass = objectClass;
+        this.where = where == null || where.isBlank() ? null : where;
+        this.parameters = parameters == null ? new Object[0] : parameters;
+        this.any = any;
+        this.transaction = transaction;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the maximum number of DB connections that may be used by all the parallel scans together. Scans that are
+     * already running are not affected.
+     *
+     * @param budget Number of connections (minimum 1).
+     */
+    public static void setConnectionBudget(int budget) {
+        synchronized(lock) {
+            ParallelScan.budget = Math.max(1, budget);
+            connections = new Semaphore(ParallelScan.budget);
+        }
+    }
+
+    /**
+     * Get the maximum number of DB connections that may be used by all the parallel scans together.
+     *
+     * @return Number of connections.
+     */
+    public static int getConnectionBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the count.
+     *
+     * @return Count.
+     */
+    public long count() {
+        return run(ObjectIterator::count).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Get the count of the objects that match the given filter.
+     *
+     * @param filter Filter.
+     * @return Count.
+     */
+    public long count(Predicate<? super T> filter) {
+        return run(i -> i.count(filter)).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Get the sum.
+     *
+     * @param function Function to extract the value from the object.
+     * @return Sum.
+     */
+    public double sum(ToDoubleFunction<? super T> function) {
+        return run(i -> i.sum(function)).stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    /**
+     * Get the average.
+     *
+     * @param function Function to extract the value from the object.
+     * @return Average.
+     */
+    public double average(ToDoubleFunction<? super T> function) {
+        double sum = 0;
+        long count = 0;
+        for(double[] partial: run(i -> {
+            double[] sc = new double[2];
+            for(T object: i) {
+                sc[0] += function.applyAsDouble(object);
+                ++sc[1];
+            }
+            return sc;
+        })) {
+            sum += partial[0];
+            count += (long) partial[1];
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Find the object that satisfies the "max" condition that specified by the given comparator.
+     *
+     * @param comparator Comparator.
+     * @return Object instance if any found (or null).
+     */
+    public T max(Comparator<? super T> comparator) {
+        T max = null;
+        for(T object: run(i -> i.max(comparator))) {
+            if(object != null && (max == null || comparator.compare(object, max) > 0)) {
+                max = object;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Find the object that satisfies the "min" condition that specified by the given comparator.
+     *
+     * @param comparator Comparator.
+     * @return Object instance if any found (or null).
+     */
+    public T min(Comparator<? super T> comparator) {
+        return max(comparator.reversed());
+    }
+
+    /**
+     * Collect all entries to a list. The entries are in the order of their Ids within each partition and the
+     * partitions are in the ascending order of their Id ranges.
+     *
+     * @return List.
+     */
+    public List<T> collectAll() {
+        List<T> list = new ArrayList<>();
+        run(ObjectIterator::toList).forEach(list::addAll);
+        return list;
+    }
+
+    /**
+     * Consume all the objects. The consumer should be thread-safe.
+     *
+     * @param consumer Consumer.
+     */
+    public void forEach(Consumer<? super T> consumer) {
+        run(i -> {
+            i.forEach(consumer);
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Run a function on each partition and get the partial results.
+     *
+     * @param function Function to run on each partition's iterator (the iterator will be closed afterward).
+     * @param <R> Type of partial result.
+     * @return Partial results, in the ascending order of the partitions.
+     */
+    public <R> List<R> run(Function<ObjectIterator<T>, R> function) {
+        List<String> partitions = partitions();
+        if(partitions.size() == 1) {
+            return Collections.singletonList(scan(partitions.getFirst(), function));
+        }
+        Semaphore connections;
+        int budget;
+        synchronized(lock) {
+            connections = ParallelScan.connections;
+            budget = ParallelScan.budget;
+        }
+        List<ForkJoinTask<R>> tasks = new ArrayList<>();
+        try(ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, budget))) {
+            for(String partition: partitions) {
+                tasks.add(pool.submit(() -> {
+                    connections.acquireUninterruptibly();
+                    try {
+                        return scan(partition, function);
+                    } finally {
+                        connections.release();
+                    }
+                }));
+            }
+            List<R> results = new ArrayList<>();
+            try {
+                for(ForkJoinTask<R> task: tasks) {
+                    results.add(task.join());
+                }
+            } catch(RuntimeException e) {
+                tasks.forEach(t -> t.cancel(true));
+                throw e;
+            }
+            return results;
+        }
+    }
+
+    private <R> R scan(String partition, Function<ObjectIterator<T>, R> function) {
+        String condition = where;
+        if(partition != null) {
+            condition = condition == null ? partition : ("(" + condition + ") AND " + partition);
+        }
+        try(ObjectIterator<T> objects = QueryBuilder.from(objectClass).where(condition, parameters).any(any)
+                .transaction(transaction).list()) {
+            return function.apply(objects);
+        }
+    }
+
+    /**
+     * Split the Id range into partitions. Each partition is returned as a condition on the Id.
+     *
+     * @return Partition conditions (a single null entry means no partitioning).
+     */
+    private List<String> partitions() {
+        List<String> partitions = new ArrayList<>();
+        if(parallelism == 1 || transaction != null) {
+            partitions.add(null);
+            return partitions;
+        }
+        BigInteger min, max;
+        try(Query q = QueryBuilder.from(objectClass).columns("MIN(Id),MAX(Id)").where(where, parameters).any(any)
+                .query()) {
+            ResultSet rs = q.getResultSet();
+            if(q.eoq() || rs.getBigDecimal(1) == null) {
+                partitions.add(null);
+                return partitions;
+            }
+            min = rs.getBigDecimal(1).toBigInteger();
+            max = rs.getBigDecimal(2).toBigInteger();
+        } catch(Exception e) {
+            throw new SORuntimeException(e);
+        }
+        BigInteger size = max.subtract(min).add(BigInteger.ONE)
+                .divide(BigInteger.valueOf(parallelism)).max(BigInteger.ONE);
+        BigInteger from = min, to;
+        while(from.compareTo(max) <= 0) {
+            to = from.add(size);
+            if(to.compareTo(max) > 0 || partitions.size() == parallelism - 1) {
+                partitions.add("Id>=" + from);
+                break;
+            }
+            partitions.add("Id>=" + from + " AND Id<" + to);
+            from = to;
+        }
+        return partitions;
+    }
+}
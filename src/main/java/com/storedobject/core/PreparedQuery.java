@@ -0,0 +1,118 @@
+package com.storedobject.core;
+
+import com.storedobject.common.SORuntimeException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link Query} executed through a cached prepared statement (see {@link PreparedStatementCache}).
+ *
+ * @author Syam
+ */
+final class PreparedQuery extends Query {
+
+    private PreparedStatementCache.Lease lease;
+    private ResultSet rs;
+    private boolean eoq = true, read = false;
+    private long limit = Long.MAX_VALUE;
+
+    private PreparedQuery(RawSQL sql) {
+        super(sql);
+    }
+
+    /**
+     * Execute a parameterized query.
+     *
+     * @param transaction Transaction (could be null).
+     * @param sql SQL with "?" placeholders.
+     * @param parameters Parameter values.
+     * @return Query.
+     */
+    static PreparedQuery execute(Transaction transaction, String sql, Object... parameters) {
+        RawSQL raw = transaction instanceof AbstractTransaction t ? t.getSQL() : new RawSQL();
+        PreparedQuery query = new PreparedQuery(raw);
+        try {
+            query.lease = PreparedStatementCache.prepare(raw, sql, parameters);
+            query.rs = query.lease.getStatement().executeQuery();
+            query.eoq = !query.rs.next(); // Positioned on the first row, like any other query
+        } catch(Exception e) {
+            query.close();
+            throw e instanceof RuntimeException re ? re : new SORuntimeException(e);
+        }
+        return query;
+    }
+
+    @Override
+    public ResultSet getResultSet() {
+        return rs;
+    }
+
+    private void advance() {
+        try {
+            eoq = limit <= 0 || !rs.next();
+        } catch(SQLException e) {
+            eoq = true;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(rs == null) {
+            return false;
+        }
+        if(!eoq && read) {
+            read = false;
+            advance();
+        }
+        if(eoq) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public ResultSet next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        read = true;
+        --limit;
+        return rs;
+    }
+
+    @Override
+    public Query skip(long skip) {
+        while(skip-- > 0 && hasNext()) {
+            read = true;
+        }
+        return this;
+    }
+
+    @Override
+    public Query limit(long limit) {
+        this.limit = limit;
+        if(limit <= 0) {
+            eoq = true;
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if(rs != null) {
+            try {
+                rs.close();
+            } catch(SQLException ignored) {
+            }
+            rs = null;
+        }
+        if(lease != null) {
+            lease.release();
+            lease = null;
+        }
+        super.close();
+    }
+}
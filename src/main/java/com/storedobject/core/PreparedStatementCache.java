@@ -0,0 +1,322 @@
+package com.storedobject.core;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of prepared statements used by the parameterized queries (see {@link QueryBuilder#where(String, Object...)}).
+ * Statements are cached per connection and keyed by the normalized SQL, so the same statement is executed again and
+ * again with different parameter values and the database doesn't need to parse and plan it every time.
+ * <p>A statement that is already in use on the same connection (nested queries of the same SQL within a
+ * transaction) is not shared - a separate, uncached statement is used instead.</p>
+ * <p>Whenever statements are prepared on a connection not seen before, the cached statements of the connections that
+ * are closed by then are dropped. A cached statement that is found closed is prepared again.</p>
+ *
+ * @author Syam
+ */
+public final class PreparedStatementCache {
+
+    private static final int STATEMENTS_PER_CONNECTION = 200;
+    private static final Map<Connection, Statements> cache = new HashMap<>();
+    private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+    private PreparedStatementCache() {
+    }
+
+    /**
+     * Get a prepared statement for the given SQL with its parameters set. The statement is prepared through the
+     * {@link RawSQL} (preparing is local to the driver) only to find its connection; if a free statement is already
+     * cached for the same SQL on that connection, the cached one (already planned by the database) is used instead.
+     *
+     * @param raw Raw SQL whose connection is to be used.
+     * @param sql SQL with "?" placeholders.
+     * @param parameters Parameter values.
+     * @return A lease of the statement. It must be released after use.
+     * @throws Exception If the statement can't be prepared or the parameters can't be set.
+     */
+    static Lease prepare(RawSQL raw, String sql, Object... parameters) throws Exception {
+        sql = normalize(sql);
+        PreparedStatement ps = raw.prepare(sql);
+        if(ps == null) {
+            throw new SQLException("Unable to prepare: " + sql);
+        }
+        Lease lease;
+        try {
+            Statements statements;
+            Connection connection = ps.getConnection();
+            synchronized(cache) {
+                statements = cache.get(connection);
+                if(statements == null) {
+                    purge();
+                    statements = new Statements();
+                    cache.put(connection, statements);
+                }
+            }
+            lease = statements.lease(sql, ps);
+        } catch(SQLException e) {
+            close(ps);
+            throw e;
+        }
+        try {
+            for(int i = 0; i < parameters.length; i++) {
+                set(lease.statement, i + 1, parameters[i]);
+            }
+        } catch(SQLException e) {
+            lease.release();
+            throw e;
+        }
+        return lease;
+    }
+
+    private static void purge() {
+        cache.entrySet().removeIf(e -> {
+            try {
+                return e.getKey().isClosed();
+            } catch(SQLException ignored) {
+                return true;
+            }
+        });
+    }
+
+    private static void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch(SQLException ignored) {
+        }
+    }
+
+    private static void set(PreparedStatement ps, int index, Object value) throws SQLException {
+        switch(value) {
+            case null -> ps.setObject(index, null);
+            case Id id -> ps.setBigDecimal(index, new BigDecimal(id.get()));
+            case StoredObject so -> ps.setBigDecimal(index, new BigDecimal(so.getId().get()));
+            case DecimalNumber dn -> ps.setBigDecimal(index, dn.getValue());
+            case Money m -> ps.setBigDecimal(index, m.getValue());
+            case java.sql.Date d -> ps.setDate(index, d);
+            case java.sql.Timestamp ts -> ps.setTimestamp(index, ts);
+            case java.util.Date d -> ps.setTimestamp(index, new java.sql.Timestamp(d.getTime()));
+            case Enum<?> e -> ps.setInt(index, e.ordinal());
+            default -> ps.setObject(index, value);
+        }
+    }
+
+    /**
+     * Embed the parameter values as literals in place of the "?" placeholders. (Used where a prepared statement
+     * can't be used).
+     *
+     * @param sql SQL with "?" placeholders.
+     * @param parameters Parameter values.
+     * @return SQL with the values embedded.
+     */
+    static String embed(String sql, Object... parameters) {
+        if(sql == null || parameters == null || parameters.length == 0) {
+            return sql;
+        }
+        StringBuilder s = new StringBuilder(sql.length() + parameters.length * 8);
+        boolean quoted = false;
+        int p = 0;
+        char c;
+        for(int i = 0; i < sql.length(); i++) {
+            c = sql.charAt(i);
+            if(c == '\'') {
+                quoted = !quoted;
+            } else if(c == '?' && !quoted && p < parameters.length) {
+                s.append(literal(parameters[p++]));
+                continue;
+            }
+            s.append(c);
+        }
+        return s.toString();
+    }
+
+    private static String literal(Object value) {
+        return switch(value) {
+            case null -> "NULL";
+            case Id id -> id.toString();
+            case StoredObject so -> so.getId().toString();
+            case DecimalNumber dn -> dn.getValue().toPlainString();
+            case Money m -> m.getValue().toPlainString();
+            case BigDecimal bd -> bd.toPlainString();
+            case Number n -> n.toString();
+            case Boolean b -> b ? "TRUE" : "FALSE";
+            case java.sql.Date d -> "'" + Database.format(d) + "'";
+            case java.util.Date d -> "'" + Database.formatWithTime(d) + "'";
+            case Enum<?> e -> String.valueOf(e.ordinal());
+            default -> "'" + value.toString().replace("'", "''") + "'";
+        };
+    }
+
+    /**
+     * Normalize the SQL (white-spaces outside the quoted parts are collapsed) so that the statements that differ
+     * only in formatting share the same cache entry.
+     *
+     * @param sql SQL.
+     * @return Normalized SQL.
+     */
+    static String normalize(String sql) {
+        StringBuilder s = new StringBuilder(sql.length());
+        boolean quoted = false, space = false;
+        char c;
+        for(int i = 0; i < sql.length(); i++) {
+            c = sql.charAt(i);
+            if(c == '\'') {
+                quoted = !quoted;
+            } else if(!quoted && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if(space) {
+                if(!s.isEmpty()) {
+                    s.append(' ');
+                }
+                space = false;
+            }
+            s.append(c);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Get the number of times a cached statement was reused.
+     *
+     * @return Number of hits.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of times a statement had to be prepared.
+     *
+     * @return Number of misses.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the hit rate of the cache.
+     *
+     * @return Hit rate (0 to 1).
+     */
+    public static double getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Get the status of the cache.
+     *
+     * @return Status.
+     */
+    public static String getStatus() {
+        int connections, statements = 0;
+        synchronized(cache) {
+            connections = cache.size();
+            for(Statements s: cache.values()) {
+                statements += s.size();
+            }
+        }
+        return "Connections: " + connections + ", Statements: " + statements + ", Hits: " + hits.get()
+                + ", Misses: " + misses.get() + ", Evictions: " + evictions.get()
+                + String.format(", Hit rate: %.1f%%", getHitRate() * 100);
+    }
+
+    /**
+     * A prepared statement leased for executing a query.
+     */
+    static final class Lease {
+
+        private final Statements owner;
+        private final PreparedStatement statement;
+        private final boolean cached;
+        private boolean inUse = true;
+
+        private Lease(Statements owner, PreparedStatement statement, boolean cached) {
+            this.owner = owner;
+            this.statement = statement;
+            this.cached = cached;
+        }
+
+        PreparedStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Release the statement. (Cached statements are returned to the cache, others are closed).
+         */
+        void release() {
+            if(cached) {
+                owner.release(this);
+                return;
+            }
+            try {
+                statement.close();
+            } catch(SQLException ignored) {
+            }
+        }
+    }
+
+    private static class Statements extends LinkedHashMap<String, Lease> {
+
+        private Statements() {
+            super(16, 0.75f, true);
+        }
+
+        synchronized Lease lease(String sql, PreparedStatement ps) throws SQLException {
+            Lease lease = get(sql);
+            if(lease != null && !lease.inUse && !lease.statement.isClosed()) {
+                hits.incrementAndGet();
+                lease.inUse = true;
+                close(ps);
+                return lease;
+            }
+            misses.incrementAndGet();
+            if(lease != null && lease.inUse) {
+                return new Lease(this, ps, false);
+            }
+            lease = new Lease(this, ps, true);
+            put(sql, lease);
+            return lease;
+        }
+
+        synchronized void release(Lease lease) {
+            try {
+                lease.statement.clearParameters();
+                lease.inUse = false;
+                if(!containsValue(lease)) { // Evicted while in use
+                    lease.statement.close();
+                }
+            } catch(SQLException e) {
+                remove(lease);
+            }
+        }
+
+        private void remove(Lease lease) {
+            values().remove(lease);
+            try {
+                lease.statement.close();
+            } catch(SQLException ignored) {
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Lease> eldest) {
+            if(size() <= STATEMENTS_PER_CONNECTION) {
+                return false;
+            }
+            evictions.incrementAndGet();
+            if(!eldest.getValue().inUse) {
+                try {
+                    eldest.getValue().statement.close();
+                } catch(SQLException ignored) {
+                }
+            }
+            return true;
+        }
+    }
+}
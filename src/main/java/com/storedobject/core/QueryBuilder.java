@@ -15,7 +15,8 @@ import java.util.Base64;
 public class QueryBuilder<T extends StoredObject> {
 
     private Class<T> objectClass;
-    private String columns, where, orderBy;
+    private String columns, where, orderBy, groupBy;
+    private Object[] parameters;
     private int limit = 0, skip = 0;
     private boolean any = false;
     private int[] distinctColumns;
@@ -54,6 +55,31 @@ public class QueryBuilder<T extends StoredObject> {
      */
     public QueryBuilder<T> where(String where) {
         this.where = where;
+        this.parameters = null;
+        return this;
+    }
+
+    /**
+     * Sets a parameterized "where" clause for the query being built. Values are not embedded in the condition,
+     * instead, they are specified using "?" placeholders and passed separately.
+     * <p>Example: <code>where("Unit=? AND CollectedAt BETWEEN ? AND ?", unitId, from, to)</code></p>
+     * <p>Parameterized queries are executed as prepared statements, cached per connection (see
+     * {@link PreparedStatementCache}), and thus, the database doesn't need to parse and plan the same query every
+     * time it is executed with different values. Parameter values may be of any type supported by JDBC, and
+     * {@link Id}, {@link StoredObject} (its {@link Id} is used), {@link DecimalNumber}, {@link Money} and
+     * {@link Enum} (its ordinal is used) are also accepted.</p>
+     * <p>Note: Only {@link #query()}, {@link #list()}, {@link #count()} and {@link #exists()} (and the pagers and the
+     * parallel scans built from them) run as prepared statements. The link and master queries do not: the values are
+     * embedded in the condition as escaped literals, as if the condition was written with the values, and there is
+     * no plan reuse for those.</p>
+     *
+     * @param where The condition with "?" placeholders.
+     * @param parameters Values of the placeholders (in the same order).
+     * @return The current {@code QueryBuilder} instance with the specified "where" clause applied.
+     */
+    public QueryBuilder<T> where(String where, Object... parameters) {
+        this.where = where;
+        this.parameters = parameters == null || parameters.length == 0 ? null : parameters;
         return this;
     }
 
@@ -69,6 +95,19 @@ public class QueryBuilder<T extends StoredObject> {
         return this;
     }
 
+    /**
+     * Sets the "group by" clause for the query being built. This is applicable only to {@link #query()} and the
+     * columns should then be the grouped columns and/or aggregate functions.
+     * <p>Example: <code>columns("Min(CollectedAt),Avg(Temperature)").groupBy("CollectedAt / 3600000")</code></p>
+     *
+     * @param groupBy The expressions by which the rows should be grouped (comma-separated).
+     * @return The current {@code QueryBuilder} instance with the specified "group by" clause applied.
+     */
+    public QueryBuilder<T> groupBy(String groupBy) {
+        this.groupBy = groupBy == null || groupBy.isBlank() ? null : groupBy;
+        return this;
+    }
+
     /**
      * Sets a limit on the number of records to be retrieved by the query.
      *
@@ -158,6 +197,30 @@ public class QueryBuilder<T extends StoredObject> {
         return this;
     }
 
+    /**
+     * Create a keyset pager for retrieving the objects page by page (see {@link KeysetPager}). The condition,
+     * "order by" clause, "any" flag and transaction of this builder are used, and the skip and limit values are
+     * ignored.
+     *
+     * @param pageSize Page size.
+     * @return A keyset pager.
+     */
+    public KeysetPager<T> pager(int pageSize) {
+        return new KeysetPager<>(objectClass, where, parameters, orderBy, any, transaction, pageSize);
+    }
+
+    /**
+     * Create a parallel scan for running the terminal operations over the objects concurrently (see
+     * {@link ParallelScan}). The condition, "any" flag and transaction of this builder are used, and the "order by"
+     * clause, skip and limit values are ignored.
+     *
+     * @param parallelism Degree of parallelism (number of partitions).
+     * @return A parallel scan.
+     */
+    public ParallelScan<T> parallel(int parallelism) {
+        return new ParallelScan<>(objectClass, where, parameters, any, transaction, parallelism);
+    }
+
     /**
      * Get an object instance. The first item is retrieved.
      *
@@ -292,6 +355,11 @@ public class QueryBuilder<T extends StoredObject> {
      * @return True/false
      */
     public boolean exists() {
+        if(parameters != null) {
+            try(Query q = prepared("Id", 1)) {
+                return q.hasNext();
+            }
+        }
         return StoredObject.exists(transaction, objectClass, where, any);
     }
 
@@ -302,9 +370,40 @@ public class QueryBuilder<T extends StoredObject> {
      *         object class, columns, where clause, order by clause, distinct columns, transaction, and limits.
      */
     public Query query() {
+        if(groupBy != null) {
+            return grouped();
+        }
+        if(parameters != null) {
+            return prepared(columns, limit);
+        }
         return StoredObject.query(transaction, objectClass, columns, where, orderBy, any, skip, limit, distinctColumns);
     }
 
+    private String condition() {
+        return PreparedStatementCache.embed(where, parameters);
+    }
+
+    private Query grouped() {
+        StringBuilder sql = new StringBuilder(StoredObject.createSQL(ClassAttribute.get(objectClass), columns, where,
+                null, !any, false, 0, 0, null));
+        sql.append(" GROUP BY ").append(groupBy);
+        if(orderBy != null && !orderBy.isBlank()) {
+            sql.append(" ORDER BY ").append(orderBy);
+        }
+        if(limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        if(skip > 0) {
+            sql.append(" OFFSET ").append(skip);
+        }
+        return PreparedQuery.execute(transaction, sql.toString(), parameters == null ? new Object[0] : parameters);
+    }
+
+    private Query prepared(String columns, int limit) {
+        return PreparedQuery.execute(transaction, StoredObject.createSQL(ClassAttribute.get(objectClass), columns,
+                where, orderBy, !any, false, skip, limit, distinctColumns), parameters);
+    }
+
     /**
      * Retrieves an iterator containing the results that match the query constructed
      * with the current configurations of {@code QueryBuilder}.
@@ -314,6 +413,11 @@ public class QueryBuilder<T extends StoredObject> {
      *         other specified parameters.
      */
     public ObjectIterator<T> list() {
+        if(parameters != null) {
+            return ObjectIterator.create(null, transaction, PreparedQuery.execute(transaction,
+                    StoredObject.createSQL(ClassAttribute.get(objectClass), null, where, orderBy, !any, true, skip,
+                            limit, distinctColumns), parameters), objectClass, any);
+        }
         return StoredObject.list(transaction, objectClass, where, orderBy, any, skip, limit, distinctColumns);
     }
 
@@ -324,6 +428,9 @@ public class QueryBuilder<T extends StoredObject> {
      * @return The number of records that match the specified query criteria.
      */
     public int count() {
+        if(parameters != null) {
+            return Id.count(prepared(StoredObject.COUNT_STAR, 0));
+        }
         return count(query());
     }
 
@@ -368,7 +475,7 @@ public class QueryBuilder<T extends StoredObject> {
      * @return A {@code Query} object representing the links of the given type associated with the specified parent object.
      */
     public Query queryLinks(Id parentId, int linkType) {
-        return parentId.queryLinks(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, columns, where,
+        return parentId.queryLinks(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, columns, condition(),
                 orderBy, any, skip, limit, distinctColumns);
     }
 
@@ -455,7 +562,7 @@ public class QueryBuilder<T extends StoredObject> {
      * @return an iterator over the linked objects of the specified type
      */
     public ObjectIterator<T> listLinks(Id parentId, int linkType) {
-        return parentId.listLinks(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, where, orderBy,
+        return parentId.listLinks(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, condition(), orderBy,
                 any, skip, limit, distinctColumns);
     }
 
@@ -582,7 +689,7 @@ public class QueryBuilder<T extends StoredObject> {
      * @return a Query object containing the results of the master objects query
      */
     public Query queryMasters(Id linkId, int linkType) {
-        return linkId.queryMasters(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, columns, where,
+        return linkId.queryMasters(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, columns, condition(),
                 orderBy, any, skip, limit, distinctColumns);
     }
 
@@ -625,7 +732,7 @@ public class QueryBuilder<T extends StoredObject> {
      * @return An iterator over the master objects linked to the specified stored object.
      */
     public ObjectIterator<T> listMasters(Id linkId, int linkType) {
-        return linkId.listMasters(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, where, orderBy,
+        return linkId.listMasters(transaction, StoredObject.TYPE_EQUALS + linkType, objectClass, condition(), orderBy,
                 any, skip, limit, distinctColumns);
     }
 
@@ -638,7 +745,7 @@ public class QueryBuilder<T extends StoredObject> {
      */
     public String querySQL() {
         return StoredObjectUtility.createSQL(ClassAttribute
-                .get(objectClass), columns, where, orderBy, any, true, skip, limit, distinctColumns);
+                .get(objectClass), columns, condition(), orderBy, any, true, skip, limit, distinctColumns);
     }
 
     /**
@@ -75,6 +75,23 @@ public class StockHistoryDate extends StoredObject implements DBTransaction.NoHi
     }
 
     public static void compute(TransactionManager tm, Date date, InventoryLocation location) throws Exception {
+        compute(tm, date, location, true);
+    }
+
+    /**
+     * Compute the stock history of a location as of the given date. The completion is recorded (except for fitment
+     * positions) so that the location is skipped if computed again.
+     *
+     * @param tm Transaction manager.
+     * @param date Date.
+     * @param location Location.
+     * @param removeZeroStocks Whether to remove the zero-quantity history entries of the date or not. When many
+     *                         locations are computed together, it is better to do it once at the end via
+     *                         {@link #removeZeroStocks(TransactionManager, Date)}.
+     * @throws Exception If the history could not be computed.
+     */
+    public static void compute(TransactionManager tm, Date date, InventoryLocation location, boolean removeZeroStocks)
+            throws Exception {
         if((location.getType() == 0 && !(location instanceof InventoryStoreBin)) || isComputed(date, location)) {
             return;
         }
@@ -121,8 +138,25 @@ public class StockHistoryDate extends StoredObject implements DBTransaction.NoHi
         d.setDate(date);
         d.setLocation(location.getId());
         tm.transact(t -> {
-            ((DBTransaction)t).getSQL().executeUpdate("DELETE FROM core.StockHistory WHERE Date='" + Database.format(date) + "' AND (Quantity).Quantity=0");
+            if(removeZeroStocks) {
+                removeZeroStocks(t, date);
+            }
             d.save(t);
         });
     }
+
+    /**
+     * Remove the zero-quantity stock history entries of the given date.
+     *
+     * @param tm Transaction manager.
+     * @param date Date.
+     * @throws Exception If the entries could not be removed.
+     */
+    public static void removeZeroStocks(TransactionManager tm, Date date) throws Exception {
+        tm.transact(t -> removeZeroStocks(t, date));
+    }
+
+    private static void removeZeroStocks(Transaction t, Date date) {
+        ((DBTransaction)t).getSQL().executeUpdate("DELETE FROM core.StockHistory WHERE Date='" + Database.format(date) + "' AND (Quantity).Quantity=0");
+    }
 }
@@ -1,6 +1,7 @@
 package com.storedobject.core;
 
 import java.math.BigInteger;
+import java.util.Collection;
 
 /**
  * SO transaction interface.
@@ -119,6 +120,38 @@ public interface Transaction {
 		}
 		return isInvolved(object.getId());
 	}
+
+	/**
+	 * Save a collection of objects in this transaction. Each object goes through its normal save process (including
+	 * {@link StoredObject#validateData(TransactionManager)} and {@link StoredObject#validate()}) and the objects
+	 * are saved in the order in which they appear in the collection.
+	 * <p>Note: This is just a loop that saves the objects one by one. The writes are not batched.</p>
+	 *
+	 * @param objects Objects to save.
+	 * @throws Exception If any of the objects could not be saved. The transaction should be rolled back.
+	 */
+	default void save(Collection<? extends StoredObject> objects) throws Exception {
+		for(StoredObject object: objects) {
+			object.save(this);
+		}
+	}
+
+	/**
+	 * Add a collection of links to a parent object in this transaction.
+	 * <p>Note: This is just a loop that adds the links one by one. The writes are not batched.</p>
+	 *
+	 * @param parent Parent object.
+	 * @param links Objects to be linked.
+	 * @param linkType Link type.
+	 * @throws Exception If any of the links could not be added. The transaction should be rolled back.
+	 */
+	default void addLinks(StoredObject parent, Collection<? extends StoredObject> links, int linkType)
+			throws Exception {
+		for(StoredObject link: links) {
+			parent.addLink(this, link, linkType);
+		}
+	}
+
 	/**
 	 * Commit the transaction.
 	 * @throws Exception Any
@@ -1,5 +1,6 @@
 package com.storedobject.core;
 
+import java.util.Collection;
 import java.util.Currency;
 import java.util.Date;
 import java.util.Properties;
@@ -129,6 +130,17 @@ public final class TransactionManager {
     }
 
 
+    /**
+     * Save a collection of objects in a single transaction (see {@link Transaction#save(Collection)}).
+     *
+     * @param objects Objects to save.
+     * @return Same as the return value of {@link #transact(Transact)}.
+     * @throws Exception If any of the objects could not be saved. None of the objects will be saved in that case.
+     */
+    public int save(Collection<? extends StoredObject> objects) throws Exception {
+        return objects.isEmpty() ? 0 : transact(t -> t.save(objects));
+    }
+
     @FunctionalInterface
     public interface TransactControl {
         void transactControl(TransactionControl tc) throws Exception;
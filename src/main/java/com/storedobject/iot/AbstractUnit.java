@@ -73,7 +73,21 @@ public abstract class AbstractUnit extends Name {
      * @return the consumption value as a Double, or null if unable to calculate
      */
     Double consumption(int resource, long from, long to) {
-        return computeConsumption(resource, from, to);
+        return consumption(resource, from, to, null);
+    }
+
+    /**
+     * Calculates the resource consumption for a specific unit over a defined time period. The values already
+     * computed in the batch are used if available.
+     *
+     * @param resource the resource identifier for which the consumption is being calculated
+     * @param from the start timestamp of the time period (in milliseconds since epoch)
+     * @param to the end timestamp of the time period (in milliseconds since epoch)
+     * @param batch consumption values computed together for many units (could be null)
+     * @return the consumption value as a Double, or null if unable to calculate
+     */
+    Double consumption(int resource, long from, long to, ConsumptionBatch batch) {
+        return batch == null ? computeConsumption(resource, from, to) : batch.consumption(this);
     }
 
     /**
@@ -156,15 +170,25 @@ public abstract class AbstractUnit extends Name {
      *         and the end time in milliseconds; or null if the calculated period is in the future
      */
     DataPeriod getDataPeriod(Date dateGMT) {
+        DataPeriod dataPeriod = dataPeriod(dateGMT);
+        return dataPeriod.to() > System.currentTimeMillis() ? null : dataPeriod;
+    }
+
+    /**
+     * Creates a DataPeriod object for the specified GMT date based on the site's timezone. Unlike
+     * {@link #getDataPeriod(Date)}, the period may not be over yet.
+     *
+     * @param dateGMT the GMT date for which the DataPeriod is determined
+     * @return a DataPeriod object containing the site-adjusted date, the start time in milliseconds,
+     *         and the end time in milliseconds
+     */
+    DataPeriod dataPeriod(Date dateGMT) {
         Date siteDate = getSite().date(dateGMT);
         Timestamp d;
         d = DateUtility.startTime(DateUtility.startOfYear(dateGMT));
         long to = 3600000L;
         long from = d.getTime() + ((DateUtility.getHourOfYear(dateGMT) - 1) * to);
         to += from;
-        if(to > System.currentTimeMillis()) {
-            return null;
-        }
         return new DataPeriod(siteDate, from, to);
     }
 
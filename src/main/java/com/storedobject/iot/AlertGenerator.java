@@ -4,17 +4,19 @@ import com.storedobject.core.*;
 import com.storedobject.job.MessageGroup;
 
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Alert Generator.
- * Data values are examined whenever new data values are received. Alerts are generated if the data received contain
- * outliers (a subsequent message is sent once the same data value becomes normal).
+ * Data values are examined whenever new data values are received. Only the units that reported new data are
+ * examined. Alerts are generated if the data received contain outliers (a subsequent message is sent once the same
+ * data value becomes normal).
  * <p>A duplicate message is suppressed for 1 hour, so, the message may be repeated if the error situation persists.</p>
+ * <p>An alert is raised only if the outlier persists for the "debounce" period (in seconds) configured via the global
+ * property "IOT-ALERT-DEBOUNCE". Similarly, an alert is considered fixed only if the value remains normal for the
+ * "hysteresis" period (in seconds) configured via the global property "IOT-ALERT-HYSTERESIS". Both default to
+ * zero.</p>
  * <p>Messages are sent to the message group configured in {@link Block#getMessageGroup()}.</p>
  * <p>Also, if there is no communication for a certain time (15 minutes) from the MQTT message handler, a special
  * alert is generated to the "IOT_ERROR_MONITOR" group.</p>
@@ -30,16 +32,23 @@ public class AlertGenerator {
     private static final long COMM_CHECK_INTERVAL = 15 * 60 * 1000L; // 15 Minutes
     private static TransactionManager tm;
     private static boolean commError = false;
-    private static final Map<Long, Alarm> alarms = new HashMap<>();
-    private static final Map<Id, MessageGroup> messageGroups = new HashMap<>();
+    private static long debounce = 0, hysteresis = 0;
+    private static final Map<Long, Alarm> alarms = new ConcurrentHashMap<>();
+    private static final Map<Long, Change> raising = new ConcurrentHashMap<>();
+    private static final Map<Long, Long> clearing = new ConcurrentHashMap<>();
+    private static final Map<Id, MessageGroup> messageGroups = new ConcurrentHashMap<>();
     private record Alarm(long time, DataSet.DataStatus<?> ds, int alarm, long occurredAt) {
 
         Alarm(long time, DataSet.DataStatus<?> ds, int alarm, Alarm parent) {
             this(time, ds, alarm, parent == null ? ds.getAlarmAt() : parent.occurredAt);
         }
     }
+    private record Change(int alarm, long since) {}
+    private record Alert(Alarm alarm, boolean fixed) {}
 
     private AlertGenerator() {
+        debounce = GlobalProperty.getInteger(tm, "IOT-ALERT-DEBOUNCE") * 1000L;
+        hysteresis = GlobalProperty.getInteger(tm, "IOT-ALERT-HYSTERESIS") * 1000L;
         new Timer().schedule(new TimerTask() {
             @Override
             public void run() {
@@ -62,42 +71,100 @@ public class AlertGenerator {
 
     static void clearAlerts() {
         alarms.clear();
+        raising.clear();
+        clearing.clear();
     }
 
-    static void dataUpdated(long now) {
+    static void dataUpdated(Set<Id> unitIds, long now) {
         lastUpdateTime = now;
-        scanTree();
-    }
-
-    private synchronized static void scanTree() {
-        DataSet.getSites().stream().filter(sd -> sd.getSite().getActive()).forEach(AlertGenerator::scanBranches);
-    }
-
-    private static void scanBranches(DataSet.AbstractData parent) {
-        parent.children().forEach(row -> {
-            if(row instanceof DataSet.UnitData ud) {
-                if(ud.getUnit().getActive()) {
-                    ud.getDataStatus().stream().filter(ds -> ds.getValueDefinition().getAlert()).forEach(ds -> {
-                        Alarm alarm = alarms.get(ds.getId());
-                        if(ds.alert()) {
-                            long now = System.currentTimeMillis();
-                            if(alarm == null || (now - alarm.time) > frequency(ds)
-                                    || ds.alarm() != alarm.alarm) { // Last alert expired or alarm state changed
-                                alarm = new Alarm(now, ds, ds.alarm(), alarm);
-                                alarms.put(ds.getId(), alarm);
-                                if((now - startedAt) > 300000L) { // More than 5 minutes have passed, we will start the alerts
-                                    alert(alarm, false);
-                                }
-                            }
-                        } else if(alarm != null) { // Became normal
-                            alarms.remove(ds.getId());
-                            alert(alarm, true);
-                        }
-                    });
+        List<Alert> alerts = new ArrayList<>();
+        DataSet.UnitData ud;
+        for(Id unitId: unitIds) {
+            ud = DataSet.getUnitData(unitId);
+            if(ud != null && ud.getSite().getActive() && ud.getUnit().getActive()) {
+                scan(ud, alerts);
+            }
+        }
+        send(alerts);
+    }
+
+    private static void scan(DataSet.UnitData ud, List<Alert> alerts) {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized(ud) {
+            ud.getDataStatus().stream().filter(ds -> ds.getValueDefinition().getAlert())
+                    .forEach(ds -> scan(ds, alerts));
+        }
+    }
+
+    private static void scan(DataSet.DataStatus<?> ds, List<Alert> alerts) {
+        long id = ds.getId(), now = System.currentTimeMillis();
+        Alarm alarm = alarms.get(id);
+        if(ds.alert()) {
+            clearing.remove(id);
+            int level = ds.alarm();
+            if(alarm != null && level == alarm.alarm) {
+                raising.remove(id);
+                if((now - alarm.time) <= frequency(ds)) {
+                    return;
+                }
+            } else { // New alarm or alarm state changed
+                Change change = raising.get(id);
+                if(change == null || change.alarm != level) {
+                    change = new Change(level, now);
+                    raising.put(id, change);
+                }
+                if((now - change.since) < debounce) {
+                    return;
+                }
+                raising.remove(id);
+            }
+            alarm = new Alarm(now, ds, level, alarm);
+            alarms.put(id, alarm);
+            if((now - startedAt) > 300000L) { // More than 5 minutes have passed, we will start the alerts
+                alerts.add(new Alert(alarm, false));
+            }
+            return;
+        }
+        raising.remove(id);
+        if(alarm == null) {
+            return;
+        }
+        Long since = clearing.putIfAbsent(id, now);
+        if((now - (since == null ? now : since)) < hysteresis) {
+            return;
+        }
+        clearing.remove(id);
+        alarms.remove(id); // Became normal
+        alerts.add(new Alert(alarm, true));
+    }
+
+    /**
+     * Send the alerts. All the alerts are sent in a single transaction and if that fails, they are sent one by one.
+     *
+     * @param alerts Alerts to send.
+     */
+    private static void send(List<Alert> alerts) {
+        if(alerts.isEmpty()) {
+            return;
+        }
+        if(alerts.size() > 1) {
+            TransactionControl tc = new TransactionControl(tm);
+            for(Alert alert: alerts) {
+                try {
+                    messageGroup(alert.alarm.ds).send(tc, message(alert.alarm, alert.fixed));
+                } catch(Throwable e) {
+                    tc.setError(e);
+                }
+                if(tc.isError()) {
+                    break;
                 }
             }
-            scanBranches(row);
-        });
+            if(!tc.isError() && tc.commit()) {
+                return;
+            }
+            tc.rollback();
+        }
+        alerts.forEach(alert -> alert(alert.alarm, alert.fixed));
     }
 
     private static String siteTime(long time) {
@@ -105,31 +172,34 @@ public class AlertGenerator {
         return DateUtility.formatWithTimeHHMM(ts);
     }
 
-    private static void alert(Alarm alarm, boolean fixed) {
+    private static MessageGroup messageGroup(DataSet.DataStatus<?> ds) {
+        return messageGroups.computeIfAbsent(ds.unit.getBlockId(), id -> ds.unit.getBlock().getMessageGroup());
+    }
+
+    private static Object[] message(Alarm alarm, boolean fixed) {
         DataSet.DataStatus<?> ds = alarm.ds;
-        MessageGroup mg = messageGroups.get(ds.unit.getBlockId());
-        if(mg == null) {
-            mg = ds.unit.getBlock().getMessageGroup();
-            messageGroups.put(ds.unit.getBlockId(), mg);
+        String v = val(ds);
+        if(fixed) {
+            v += " (Issue Fixed)";
+        } else {
+            String m = ds.getAlarmMessage();
+            if(m != null && !m.isEmpty()) {
+                v += " (" + m + ")";
+            }
+        }
+        String time = "Detected at " + siteTime(alarm.occurredAt);
+        if(fixed) {
+            time += ", Fixed at " + siteTime(ds.getAlarmAt());
+        } else if((alarm.time - alarm.occurredAt) > 300000L) {
+            time += ", Not yet fixed at " + siteTime(alarm.time);
         }
+        return new Object[] { ds.unit.getSite().getName(), ds.unit.getBlock().getName(),
+                ds.valueDefinition.getShortName() + " = " + v, time };
+    }
+
+    private static void alert(Alarm alarm, boolean fixed) {
         try {
-            String v = val(ds);
-            if(fixed) {
-                v += " (Issue Fixed)";
-            } else {
-                String m = ds.getAlarmMessage();
-                if(m != null && !m.isEmpty()) {
-                    v += " (" + m + ")";
-                }
-            }
-            String time = "Detected at " + siteTime(alarm.occurredAt);
-            if(fixed) {
-                time += ", Fixed at " + siteTime(ds.getAlarmAt());
-            } else if((alarm.time - alarm.occurredAt) > 300000L) {
-                time += ", Not yet fixed at " + siteTime(alarm.time);
-            }
-            mg.send(tm, ds.unit.getSite().getName(), ds.unit.getBlock().getName(),
-                    ds.valueDefinition.getShortName() + " = " + v, time);
+            messageGroup(alarm.ds).send(tm, message(alarm, fixed));
         } catch (Throwable e) {
             tm.log(e);
         }
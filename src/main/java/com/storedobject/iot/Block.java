@@ -448,11 +448,56 @@ public final class Block extends AbstractUnit {
      */
     public void recomputeStatistics(TransactionManager tm) throws Exception {
         List<Unit> units = listUnits().toList();
+        checkNotCompacted(units, "statistics");
         for(Unit unit : units) {
             unit.recomputeStatistics(tm);
         }
     }
 
+    private static void checkNotCompacted(List<Unit> units, String what) throws Exception {
+        for(Unit unit: units) {
+            if(unit.isCompacted()) {
+                throw new SOException("Raw data of " + unit.toDisplay() + " is already compacted, " + what
+                        + " can not be recomputed");
+            }
+        }
+    }
+
+    /**
+     * Compacts the raw data collected for all the units of this block as per the retention period defined by the
+     * global property "IOT-DATA-RETENTION" (in months). Raw data older than the retention period is deleted after
+     * summarizing it into the statistics and computing the consumption. Raw data is not deleted beyond the hour up
+     * to which the consumption of every resource consumed is computed. Nothing is deleted if the retention period is
+     * not defined.
+     *
+     * @param tm The transaction manager to be used for the operation.
+     * @return Number of data records deleted.
+     * @throws Exception If an error occurs while computing the statistics or the consumption, or deleting the data.
+     */
+    public long compactData(TransactionManager tm) throws Exception {
+        int months = GlobalProperty.getInteger(tm, "IOT-DATA-RETENTION");
+        if(months <= 0) {
+            return 0;
+        }
+        long before = DateUtility.addMonth(DateUtility.today(), -months).getTime(), deleted = 0;
+        Date next;
+        for(Resource resource: list(Resource.class).toList()) {
+            if(!consumes(resource.getCode())) {
+                continue;
+            }
+            computeConsumption(tm, resource);
+            next = nextConsumptionDate(resource);
+            if(next == null) { // Consumption not yet computed
+                return 0;
+            }
+            before = Math.min(before, next.getTime());
+        }
+        for(Unit unit: listUnits().filter(u -> !(u instanceof SuperUnit)).toList()) {
+            deleted += unit.compactData(tm, before);
+        }
+        return deleted;
+    }
+
     /**
      * Deletes the consumption data for the given resource.
      *
@@ -485,6 +530,7 @@ public final class Block extends AbstractUnit {
      * @throws Exception If an error occurs during the computation process.
      */
     public void recomputeConsumption(TransactionManager tm) throws Exception {
+        checkNotCompacted(listUnits().toList(), "consumption");
         List<Resource> resources = list(Resource.class).toList();
         for(Resource resource: resources) {
             recomputeConsumption(tm, resource);
@@ -501,6 +547,7 @@ public final class Block extends AbstractUnit {
      * @throws Exception If an error occurs during the transaction or computation process.
      */
     public void recomputeConsumption(TransactionManager tm, Resource resource) throws Exception {
+        checkNotCompacted(listUnits().toList(), "consumption");
         deleteConsumption(tm, resource);
         computeConsumption(tm, resource);
     }
@@ -557,17 +604,8 @@ public final class Block extends AbstractUnit {
      */
     private int consumption(TransactionManager tm, Resource resource) throws Exception {
         ResultSet rs;
-        int y, h;
-        Date dateGMT;
-        try (Query q = query(HourlyConsumption.class, "/Max(Year)", "Resource=" + resource.getId()
-                + " AND Item=" + getId())) {
-            rs = q.getResultSet();
-            y = rs.getInt(1);
-            if(rs.wasNull()) {
-                y = -1;
-            }
-        }
-        if(y == -1) { // Never computed
+        Date dateGMT = nextConsumptionDate(resource);
+        if(dateGMT == null) { // Never computed
             List<Unit> units = list(Unit.class, "Active AND Block=" + getId(), true).toList();
             if(units.isEmpty()) {
                 return 0;
@@ -582,15 +620,6 @@ public final class Block extends AbstractUnit {
                 }
                 dateGMT = new Date(first);
             }
-        } else {
-            try (Query q = query(HourlyConsumption.class, "/Max(Hour)", "Resource=" + resource.getId()
-                    + " AND Item=" + getId() + " AND Year=" + y)) {
-                rs = q.getResultSet();
-                h = rs.getInt(1);
-                dateGMT = DateUtility.create(y, 1, 1); // Site date
-                dateGMT = new Date(dateGMT.getTime() + (h * 3600000L)); // Hour offset + 1 hour
-                dateGMT = getSite().dateGMT(dateGMT); // To GMT
-            }
         }
         int result;
         while ((result = consumption(tm, resource, dateGMT)) == -2) { // Data gap?
@@ -599,6 +628,35 @@ public final class Block extends AbstractUnit {
         return result;
     }
 
+    /**
+     * Get the time (GMT) of the hour for which the consumption of the given resource is to be computed next.
+     *
+     * @param resource Resource.
+     * @return Time of the next hour (GMT) or null if the consumption was never computed.
+     * @throws Exception If the database can not be queried.
+     */
+    private Date nextConsumptionDate(Resource resource) throws Exception {
+        ResultSet rs;
+        int y, h;
+        Date dateGMT;
+        try (Query q = query(HourlyConsumption.class, "/Max(Year)", "Resource=" + resource.getId()
+                + " AND Item=" + getId())) {
+            rs = q.getResultSet();
+            y = rs.getInt(1);
+            if(rs.wasNull()) {
+                return null;
+            }
+        }
+        try (Query q = query(HourlyConsumption.class, "/Max(Hour)", "Resource=" + resource.getId()
+                + " AND Item=" + getId() + " AND Year=" + y)) {
+            rs = q.getResultSet();
+            h = rs.getInt(1);
+            dateGMT = DateUtility.create(y, 1, 1); // Site date
+            dateGMT = new Date(dateGMT.getTime() + (h * 3600000L)); // Hour offset + 1 hour
+            return getSite().dateGMT(dateGMT); // To GMT
+        }
+    }
+
     /**
      * Computes and processes the consumption of a given resource over a specific time period.
      * The method calculates consumption data at different levels (hourly, daily, weekly, etc.)
@@ -637,6 +695,8 @@ public final class Block extends AbstractUnit {
         }
         list(SuperUnit.class, "Block=" + getId() + " AND Active", true)
                 .forEach(units::add); // Super-units are added at the bottom of the list
+        // Units with similar consumption calculators are computed together
+        ConsumptionBatch batch = new ConsumptionBatch(resource.getCode(), units, dataPeriod.from(), dataPeriod.to());
         Id id = getId();
         HourlyConsumption hc, hcB = resource.createHourlyConsumption(id, siteDate);
         DailyConsumption dc, dcB = resource.createDailyConsumption(id, siteDate);
@@ -664,7 +724,7 @@ public final class Block extends AbstractUnit {
                     }
                 }
             } else {
-                consumption = unit.consumption(resource.getCode(), dataPeriod.from(), dataPeriod.to());
+                consumption = unit.consumption(resource.getCode(), dataPeriod.from(), dataPeriod.to(), batch);
             }
             if(consumption == null) {
                 continue;
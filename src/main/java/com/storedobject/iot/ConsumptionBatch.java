@@ -0,0 +1,88 @@
+package com.storedobject.iot;
+
+import com.storedobject.core.ApplicationServer;
+import com.storedobject.core.Id;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consumption values of many units computed together for a resource and time period. Units whose consumption
+ * calculators are equal (see {@link DataConsumption}) are grouped, and each group is computed with a single query
+ * instead of a couple of queries per unit. If a group fails, its units are computed one by one as usual.
+ *
+ * @author Syam
+ */
+final class ConsumptionBatch {
+
+    private static final Map<Class<?>, Boolean> customUnitClasses = new ConcurrentHashMap<>();
+    private final int resource;
+    private final long from, to;
+    private final Map<Id, Double> computed = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param resource Resource identifier.
+     * @param units Units for which the consumption is to be computed.
+     * @param from Start of the period.
+     * @param to End of the period.
+     */
+    ConsumptionBatch(int resource, Collection<? extends AbstractUnit> units, long from, long to) {
+        this.resource = resource;
+        this.from = from;
+        this.to = to;
+        Map<ConsumptionCalculator, List<AbstractUnit>> groups = new HashMap<>();
+        for(AbstractUnit unit: units) {
+            if(unit instanceof SuperUnit || custom(unit.getClass())) {
+                continue;
+            }
+            if(unit.getConsumptionCalculator(resource) instanceof DataConsumption dc) {
+                groups.computeIfAbsent(dc, k -> new ArrayList<>()).add(unit);
+            }
+        }
+        groups.forEach((calculator, list) -> {
+            Set<Id> unitIds = new HashSet<>();
+            list.forEach(u -> unitIds.add(u.unitId()));
+            Map<Id, Double> values;
+            try {
+                values = calculator.compute(resource, unitIds, from, to);
+            } catch(RuntimeException e) {
+                // Not added to the computed values, so, these units fall back to computeConsumption
+                ApplicationServer.log("Unable to compute the consumption of " + list.size() + " units together", e);
+                return;
+            }
+            list.forEach(u -> computed.put(u.getId(), values.get(u.unitId())));
+        });
+    }
+
+    /**
+     * Get the consumption of a unit. If it was not computed in the batch, it will be computed now.
+     *
+     * @param unit Unit.
+     * @return Consumption or null if not computable.
+     */
+    Double consumption(AbstractUnit unit) {
+        Id id = unit.getId();
+        return computed.containsKey(id) ? computed.get(id) : unit.computeConsumption(resource, from, to);
+    }
+
+    /**
+     * Check whether the unit class has its own way of computing the consumption.
+     *
+     * @param unitClass Unit class.
+     * @return True if the unit class overrides {@link AbstractUnit#computeConsumption(int, long, long)}.
+     */
+    private static boolean custom(Class<?> unitClass) {
+        return customUnitClasses.computeIfAbsent(unitClass, uc -> {
+            for(Class<?> c = uc; c != AbstractUnit.class && c != null; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("computeConsumption", int.class, long.class, long.class);
+                    return true;
+                } catch(NoSuchMethodException ignored) {
+                }
+            }
+            return false;
+        });
+    }
+}
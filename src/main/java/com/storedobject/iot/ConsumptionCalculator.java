@@ -2,6 +2,10 @@ package com.storedobject.iot;
 
 import com.storedobject.core.Id;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A functional interface for calculating consumption values over a specified time period.
  * The calculation can be customized using various factory methods.
@@ -23,6 +27,30 @@ public interface ConsumptionCalculator {
      */
     Double compute(int resource, Id unitId, long from, long to);
 
+    /**
+     * Computes the values for many units over the same time period. The default implementation invokes
+     * {@link #compute(int, Id, long, long)} for each unit, but the calculators created via the factory methods
+     * compute the values for all the units with a single query.
+     *
+     * @param resource the resource identifier used in the computation
+     * @param unitIds the unique identifiers of the units on which computation is performed
+     * @param from the starting timestamp for the computation period
+     * @param to the ending timestamp for the computation period
+     * @return a map of unit identifiers to the calculated values (units for which the computation fails will not
+     * be in the map)
+     */
+    default Map<Id, Double> compute(int resource, Collection<Id> unitIds, long from, long to) {
+        Map<Id, Double> map = new HashMap<>();
+        Double c;
+        for(Id unitId: unitIds) {
+            c = compute(resource, unitId, from, to);
+            if(c != null) {
+                map.put(unitId, c);
+            }
+        }
+        return map;
+    }
+
     /**
      * Creates a ConsumptionCalculator instance to compute the difference in values
      * of a specific variable for a given data class between the specified time range.
@@ -32,7 +60,7 @@ public interface ConsumptionCalculator {
      * @return a ConsumptionCalculator instance configured for the specified data class and variable
      */
     static ConsumptionCalculator create(Class<? extends Data> dataClass, String variable) {
-        return (resource, unitId, from, to) -> Data.getValueDifference(dataClass, unitId, variable, from, to);
+        return new DataConsumption(dataClass, variable, DataConsumption.DIFFERENCE, 1, 0);
     }
 
     /**
@@ -46,10 +74,7 @@ public interface ConsumptionCalculator {
      * @return a ConsumptionCalculator instance configured with the specified parameters
      */
     static ConsumptionCalculator create(Class<? extends Data> dataClass, String variable, double multiplier) {
-        return (resource, unitId, from, to) -> {
-            Double c = Data.getValueDifference(dataClass, unitId, variable, from, to);
-            return c == null ? null : c * multiplier;
-        };
+        return new DataConsumption(dataClass, variable, DataConsumption.DIFFERENCE, multiplier, 0);
     }
 
     /**
@@ -65,10 +90,7 @@ public interface ConsumptionCalculator {
      *         multiplier, and meter reset logic
      */
     static ConsumptionCalculator create(Class<? extends Data> dataClass, String variable, double multiplier, double meterReset) {
-        return (resource, unitId, from, to) -> {
-            Double c = Data.getValueIncrease(dataClass, unitId, variable, from, to, meterReset);
-            return c == null ? null : c * multiplier;
-        };
+        return new DataConsumption(dataClass, variable, DataConsumption.INCREASE, multiplier, meterReset);
     }
 
     /**
@@ -84,9 +106,7 @@ public interface ConsumptionCalculator {
      * @return a ConsumptionCalculator instance that computes values based on state changes in the data
      */
     static ConsumptionCalculator create(Class<? extends Data> dataClass, String variable, boolean toTrue, double multiplier) {
-        return (resource, unitId, from, to) -> {
-            Integer c = Data.getStateChanged(dataClass, unitId, variable, from, to, toTrue);
-            return c == null ? null : c * multiplier;
-        };
+        return new DataConsumption(dataClass, variable,
+                toTrue ? DataConsumption.TO_TRUE : DataConsumption.TO_FALSE, multiplier, 0);
     }
 }
@@ -8,18 +8,28 @@ import com.storedobject.job.Schedule;
 
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Controller extends DaemonJob {
 
     private static final int ONE_DAY = 24 * 60 * 60000;
     private static Controller controller;
-    private final List<Control> controls = new ArrayList<>();
+    // All the controls share a single timer thread, and the commands are sent from virtual threads
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "IoT Controller");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<Key, Control> controls = new HashMap<>();
 
     public Controller(Schedule schedule) {
         super(schedule);
         if(controller != null) {
             log("Controller is already running - clearing");
-            controller.cancel();
+            controller.stop();
         }
         controller = this;
     }
@@ -33,7 +43,7 @@ public class Controller extends DaemonJob {
 
     @Override
     public void shutdown() {
-        cancel();
+        stop();
         controller = null;
         super.shutdown();
     }
@@ -42,71 +52,108 @@ public class Controller extends DaemonJob {
         if(controller == null) {
             return;
         }
-        controller.cancel();
         synchronized (controller.controls) {
             controller.load();
         }
     }
 
+    /**
+     * Load the controls. Controls that are not changed since the previous load are left untouched, new ones are
+     * scheduled and the ones that are no more applicable are cancelled.
+     */
     private void load() {
+        List<ControlSchedule> css = new ArrayList<>();
+        Map<Id, Set<Id>> excluded = new HashMap<>();
+        Map<Id, ValueDefinition<?>> controlValues = new HashMap<>();
+        Map<Id, String> unitClasses = new HashMap<>();
+        for(ControlSchedule cs: StoredObject.list(ControlSchedule.class, "Active")) {
+            ValueDefinition<?> vd = cs.getControl();
+            if(vd == null) {
+                continue;
+            }
+            UnitDefinition ud = vd.getMaster(UnitDefinition.class);
+            if(ud == null) {
+                continue;
+            }
+            UnitType ut = ud.getUnitType();
+            if(ut == null) {
+                continue;
+            }
+            css.add(cs);
+            controlValues.put(cs.getId(), vd);
+            unitClasses.put(cs.getId(), ut.getUnitClassName());
+            // Units and blocks linked to the schedule are excluded from it
+            Set<Id> ids = new HashSet<>();
+            cs.listMasters(Unit.class, true).forEach(u -> ids.add(u.getId()));
+            cs.listMasters(Block.class).forEach(b -> ids.add(b.getId()));
+            excluded.put(cs.getId(), ids);
+        }
+        Map<Id, List<Unit>> units = new HashMap<>();
+        if(!css.isEmpty()) {
+            StoredObject.list(Unit.class, "Active", true)
+                    .forEach(u -> units.computeIfAbsent(u.getBlockId(), k -> new ArrayList<>()).add(u));
+        }
+        Map<Key, Control> previous = new HashMap<>(controls);
+        controls.clear();
         String cv;
         Date at;
-        List<ControlSchedule> css = StoredObject.list(ControlSchedule.class, "Active").toList();
-        List<Site> sites = StoredObject.list(Site.class, "Active").toList();
-        List<Block> blocks;
-        List<Unit> units;
-        for(Site site: sites) {
-            blocks = StoredObject.list(Block.class, "Site=" + site.getId() + " AND Active").toList();
-            for(Block block: blocks) {
-                units = StoredObject.list(Unit.class, "Block=" + block.getId() + " AND Active", true)
-                        .toList();
-                for(Unit unit: units) {
+        int added = 0;
+        for(Site site: StoredObject.list(Site.class, "Active")) {
+            int timeDiff = site.getTimeDifference();
+            for(Block block: StoredObject.list(Block.class, "Site=" + site.getId() + " AND Active")) {
+                for(Unit unit: units.getOrDefault(block.getId(), List.of())) {
                     for(ControlSchedule cs: css) {
-                        if(unit.getOrdinality() != cs.getOrdinality() || unit.existsLink(cs) || block.existsLink(cs)) {
+                        if(unit.getOrdinality() != cs.getOrdinality()
+                                || !unitClasses.get(cs.getId()).equals(unit.getClass().getName())) {
                             continue;
                         }
-                        ValueDefinition<?> vd = cs.getControl();
-                        if(vd == null) {
+                        Set<Id> ex = excluded.get(cs.getId());
+                        if(ex.contains(unit.getId()) || ex.contains(block.getId())) {
                             continue;
                         }
-                        UnitDefinition ud = vd.getMaster(UnitDefinition.class);
-                        if(ud == null) {
+                        ValueDefinition<?> vd = controlValues.get(cs.getId());
+                        cv = cs.controlValue();
+                        Key key = new Key(unit.getId(), cs.getId());
+                        Control control = new Control(unit.getId(), vd.getId(), cs.getDays(), cv, timeDiff,
+                                cs.getSendAt());
+                        Control old = previous.remove(key);
+                        if(old != null && old.equals(control)) {
+                            control.future = old.future;
+                            controls.put(key, control);
                             continue;
                         }
-                        UnitType ut = ud.getUnitType();
-                        if(ut == null || !ut.getUnitClassName().equals(unit.getClass().getName())) {
-                            continue;
+                        if(old != null) {
+                            old.future.cancel(false);
                         }
-                        int timeDiff = site.getTimeDifference();
                         long firstFire = DateUtility.startOfToday().getTime() + (cs.getSendAt() * 60000L) - timeDiff;
                         if(firstFire < System.currentTimeMillis()) {
                             firstFire += ONE_DAY;
                         }
-                        Timer timer = new Timer();
-                        cv = cs.controlValue();
-                        Control control = new Control(timer, unit.getId(), vd.getId(), cs.getDays(), cv, timeDiff);
-                        controls.add(control);
                         at = new Date(firstFire);
                         log(vd.getName() + " = " + cv + " will be sent to " + unit.toDisplay() + " at "
                                 + DateUtility.formatWithTimeHHMM(at) + " UTC ("
                                 + DateUtility.formatWithTime(site.date(at)) + " " + site.getTimeZone() + ")");
-                        timer.scheduleAtFixedRate(new TimerTask() {
-                            @Override
-                            public void run() {
-                                send(control);
-                            }
-                        }, at, ONE_DAY);
+                        control.future = timer.scheduleAtFixedRate(
+                                () -> Thread.startVirtualThread(() -> send(control)),
+                                firstFire - System.currentTimeMillis(), ONE_DAY, TimeUnit.MILLISECONDS);
+                        controls.put(key, control);
+                        ++added;
                     }
                 }
             }
         }
+        previous.values().forEach(c -> c.future.cancel(false));
+        if(added > 0 || !previous.isEmpty()) {
+            log("Controls scheduled: " + added + ", cancelled: " + previous.size() + ", active: " + controls.size());
+        }
     }
 
-    private void cancel() {
+    private void stop() {
         synchronized (controls) {
-            controls.forEach(c -> c.timer.cancel());
+            controls.values().forEach(c -> c.future.cancel(false));
             controls.clear();
         }
+        timer.shutdownNow();
         log("All controls cleared");
     }
 
@@ -129,5 +176,33 @@ public class Controller extends DaemonJob {
         }
     }
 
-    private record Control(Timer timer, Id unitId, Id valueDefinitionId, int days, String value, int timeDiff) {}
+    private record Key(Id unitId, Id controlScheduleId) {}
+
+    private static final class Control {
+
+        private final Id unitId, valueDefinitionId;
+        private final int days, timeDiff, sendAt;
+        private final String value;
+        private ScheduledFuture<?> future;
+
+        private Control(Id unitId, Id valueDefinitionId, int days, String value, int timeDiff, int sendAt) {
+            this.unitId = unitId;
+            this.valueDefinitionId = valueDefinitionId;
+            this.days = days;
+            this.value = value;
+            this.timeDiff = timeDiff;
+            this.sendAt = sendAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Control c && unitId.equals(c.unitId) && valueDefinitionId.equals(c.valueDefinitionId)
+                    && days == c.days && timeDiff == c.timeDiff && sendAt == c.sendAt && Objects.equals(value, c.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(unitId, valueDefinitionId, days, timeDiff, sendAt, value);
+        }
+    }
 }
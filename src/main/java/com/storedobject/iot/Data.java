@@ -1,5 +1,6 @@
 package com.storedobject.iot;
 
+import com.storedobject.common.SORuntimeException;
 import com.storedobject.core.*;
 import com.storedobject.core.annotation.Column;
 import com.storedobject.core.annotation.SetNotAllowed;
@@ -9,6 +10,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Duration;
+import java.util.*;
 
 /**
  * Base class that represents data values that belong to a {@link Unit}.
@@ -42,6 +44,7 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
      */
     public static void indices(Indices indices) {
         indices.add("CollectedAt", false);
+        indices.add("Unit,CollectedAt", false);
     }
 
     /**
@@ -143,7 +146,29 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
     }
 
     /**
-     * Get the latest data record collected.
+     * Updates the latest value cache ({@link LatestData}) and feeds the values to the running statistics
+     * ({@link StatisticsRollup}) once the transaction is committed. Subclasses overriding this method must invoke this.
+     *
+     * @throws Exception Not thrown here.
+     */
+    @Override
+    public void saved() throws Exception {
+        super.saved();
+        Transaction transaction = getTransaction();
+        if(transaction == null) { // Direct update, already in the database
+            LatestData.put(this);
+            StatisticsRollup.add(this);
+            return;
+        }
+        transaction.addCommitListener(t -> {
+            LatestData.put(this);
+            StatisticsRollup.add(this);
+        });
+    }
+
+    /**
+     * Get the latest data record collected. When the unit is specified, it is served from the latest value cache
+     * ({@link LatestData}) and the instance returned is shared, so it must not be modified.
      *
      * @param objectClass IOT object class.
      * @param <IOT> Type of object class.
@@ -151,19 +176,42 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
      * @return Latest data record or null if not available.
      */
     public static <IOT extends Data> IOT getLatest(Class<IOT> objectClass, Id unitId) {
-        Query q = query(objectClass, "Max(Id)", Id.isNull(unitId) ? null : ("Unit=" + unitId));
+        return Id.isNull(unitId) ? loadLatest(objectClass, null) : LatestData.get(objectClass, unitId);
+    }
+
+    /**
+     * Load the latest data record collected from the database, bypassing the cache.
+     *
+     * @param objectClass IOT object class.
+     * @param <IOT> Type of object class.
+     * @param unitId {@link Id} of the unit (could be null).
+     * @return Latest data record or null if not available.
+     */
+    static <IOT extends Data> IOT loadLatest(Class<IOT> objectClass, Id unitId) {
+        Id id = latestId(objectClass, unitId);
+        return id == null ? null : get(objectClass, id);
+    }
+
+    /**
+     * Get the {@link Id} of the latest data record collected from the database.
+     *
+     * @param objectClass IOT object class.
+     * @param unitId {@link Id} of the unit (could be null).
+     * @return Id of the latest data record or null if not available.
+     */
+    static Id latestId(Class<? extends Data> objectClass, Id unitId) {
+        Query q = Id.isNull(unitId) ? query(objectClass, "Max(Id)")
+                : QueryBuilder.from(objectClass).columns("Max(Id)").where("Unit=?", unitId).query();
         BigDecimal id = null;
         try {
             ResultSet rs = q.getResultSet();
-            if(!rs.wasNull()) {
-                id = rs.getBigDecimal(1);
-            }
+            id = rs.getBigDecimal(1);
         } catch(SQLException throwable) {
             return null;
         } finally {
             q.close();
         }
-        return id == null ? null : get(objectClass, new Id(id));
+        return id == null ? null : new Id(id);
     }
 
     /**
@@ -217,7 +265,7 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
                     if (at == collectedAt) {
                         return new Value(collectedAt, d.getDouble(2));
                     }
-                    if (data == null || Math.abs(pat - collectedAt) < Math.abs(at - collectedAt)) {
+                    if (data == null || Math.abs(at - collectedAt) < Math.abs(pat - collectedAt)) {
                         pat = at;
                         data = d.getDouble(2);
                     }
@@ -229,6 +277,119 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
         return data == null ? null : new Value(pat, data);
     }
 
+    /**
+     * Get the data values collected at many instances in one go. This is the batch version of
+     * {@link #getValueAt(Class, Id, String, long, Duration)} and all the probes are answered by a single query.
+     *
+     * @param dataClass Data class.
+     * @param probes Probes (unit, variable and time of collection).
+     * @param timeSpan Time span. (Collected at +/- this time span is searched).
+     * @param <D> Data type.
+     * @return Data values found. Probes for which no value is found will not be in the map.
+     * @throws SORuntimeException If the data can not be read.
+     */
+    public static <D extends Data> Map<Probe, Value> getValuesAt(Class<D> dataClass, Collection<Probe> probes,
+                                                                 Duration timeSpan) {
+        Map<Probe, Value> values = new HashMap<>();
+        if(probes.isEmpty()) {
+            return values;
+        }
+        long ts = timeSpan == null ? 0 : timeSpan.toMillis();
+        Map<Id, List<Probe>> unitProbes = new HashMap<>();
+        List<String> variables = new ArrayList<>();
+        List<long[]> windows = new ArrayList<>();
+        for(Probe p: probes) {
+            unitProbes.computeIfAbsent(p.unitId, k -> new ArrayList<>()).add(p);
+            if(!variables.contains(p.variable)) {
+                variables.add(p.variable);
+            }
+            windows.add(new long[] { p.time - ts, p.time + ts });
+        }
+        String condition = inUnits(unitProbes.keySet()) + " AND (" + windows(windows) + ")";
+        long at;
+        double v;
+        try (Query list = query(dataClass, "Unit,CollectedAt," + String.join(",", variables), condition,
+                "Unit,CollectedAt")) {
+            for(ResultSet d: list) {
+                List<Probe> ps = unitProbes.get(new Id(d.getBigDecimal(1)));
+                if(ps == null) {
+                    continue;
+                }
+                at = d.getLong(2);
+                for(Probe p: ps) {
+                    if(Math.abs(at - p.time) > ts) {
+                        continue;
+                    }
+                    Value found = values.get(p);
+                    if(found == null || Math.abs(at - p.time) < Math.abs(found.time - p.time)) {
+                        v = d.getDouble(3 + variables.indexOf(p.variable));
+                        values.put(p, new Value(at, v));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new SORuntimeException(e);
+        }
+        return values;
+    }
+
+    /**
+     * Get the difference in data values collected at 2 different time instances for many units in one go. This
+     * is the batch version of {@link #getValueDifference(Class, Id, String, long, long)}.
+     *
+     * @param dataClass Data class.
+     * @param unitIds Unit Ids.
+     * @param variable Variable name.
+     * @param from Time from.
+     * @param to Time to.
+     * @param <D> Data type.
+     * @return Map of unit Ids to the difference. Units for which the difference can not be computed will not be in
+     * the map.
+     */
+    public static <D extends Data> Map<Id, Double> getValueDifferences(Class<D> dataClass, Collection<Id> unitIds,
+                                                                       String variable, long from, long to) {
+        return getValueIncreases(dataClass, unitIds, variable, from, to, Double.NaN);
+    }
+
+    /**
+     * Get the increase in data values collected at 2 different time instances for many units in one go. This
+     * is the batch version of {@link #getValueIncrease(Class, Id, String, long, long, double)}.
+     *
+     * @param dataClass Data class.
+     * @param unitIds Unit Ids.
+     * @param variable Variable name.
+     * @param from Time from.
+     * @param to Time to.
+     * @param meterReset Value at which the Meter resets.
+     * @param <D> Data type.
+     * @return Map of unit Ids to the increase. Units for which the increase can not be computed will not be in
+     * the map.
+     */
+    public static <D extends Data> Map<Id, Double> getValueIncreases(Class<D> dataClass, Collection<Id> unitIds,
+                                                                     String variable, long from, long to,
+                                                                     double meterReset) {
+        List<Probe> probes = new ArrayList<>();
+        for(Id unitId: unitIds) {
+            probes.add(new Probe(unitId, variable, from));
+            probes.add(new Probe(unitId, variable, to));
+        }
+        Map<Probe, Value> values = getValuesAt(dataClass, probes, Duration.ofMillis((to - from) >> 1));
+        Map<Id, Double> result = new HashMap<>();
+        Value v1, v2;
+        for(int i = 0; i < probes.size(); i += 2) {
+            v1 = values.get(probes.get(i));
+            v2 = values.get(probes.get(i + 1));
+            if(v1 == null || v2 == null || v1.time == v2.time) {
+                continue;
+            }
+            if(!Double.isNaN(meterReset) && v2.value < v1.value) {
+                v2 = new Value(v2.time, v2.value + meterReset);
+            }
+            result.put(probes.get(i).unitId, (v2.value - v1.value) * (to - from) / (v2.time - v1.time));
+        }
+        return result;
+    }
+
     /**
      * Get the difference in data value collected at 2 different time instances.
      *
@@ -367,6 +528,59 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
         return ++changed;
     }
 
+    /**
+     * Determines the number of state changes for many units in one go. This is the batch version of
+     * {@link #getStateChanged(Class, Id, String, long, long, boolean)} and a single query is used for all the units.
+     *
+     * @param <D>       Type of the data class that extends {@code Data}.
+     * @param dataClass The data class in which the state changes are being queried.
+     * @param unitIds   Unit Ids.
+     * @param variable  The variable name to monitor for state changes.
+     * @param from      The starting time (exclusive) of the time range in milliseconds.
+     * @param to        The ending time (inclusive) of the time range in milliseconds.
+     * @param toTrue    Target state to track changes towards.
+     * @return Map of unit Ids to the number of state changes. Units without any state change in the time range will
+     * not be in the map.
+     * @throws SORuntimeException If the data can not be read.
+     */
+    public static <D extends Data> Map<Id, Integer> getStateChanged(Class<D> dataClass, Collection<Id> unitIds,
+                                                                    String variable, long from, long to,
+                                                                    boolean toTrue) {
+        Map<Id, Integer> result = new HashMap<>();
+        if(unitIds.isEmpty()) {
+            return result;
+        }
+        Id unitId, previousUnit = null;
+        int changed = 0;
+        boolean previous = toTrue, current;
+        // As in the single-unit version, units without any state change are left out
+        try (Query list = query(dataClass, "Unit," + variable, inUnits(unitIds)
+                + " AND CollectedAt BETWEEN " + (from + 1) + " AND " + to, "Unit,CollectedAt")) {
+            for(ResultSet d: list) {
+                unitId = new Id(d.getBigDecimal(1));
+                if(!unitId.equals(previousUnit)) {
+                    if(changed > 0) {
+                        result.put(previousUnit, changed);
+                    }
+                    previousUnit = unitId;
+                    previous = toTrue;
+                    changed = 0;
+                }
+                current = d.getBoolean(2);
+                if(current != previous && current == toTrue) {
+                    changed++;
+                }
+                previous = current;
+            }
+        } catch (SQLException e) {
+            throw new SORuntimeException(e);
+        }
+        if(changed > 0) {
+            result.put(previousUnit, changed);
+        }
+        return result;
+    }
+
     /**
      * Determines the state changes of a specific variable within a given period of time.
      *
@@ -423,6 +637,47 @@ public abstract class Data extends StoredObject implements DBTransaction.NoHisto
         return getValueCount(dataClass, unitId, variable, value, from, to);
     }
 
+    private static String inUnits(Collection<Id> unitIds) {
+        StringBuilder s = new StringBuilder("Unit IN (");
+        boolean first = true;
+        for(Id unitId: unitIds) {
+            if(first) {
+                first = false;
+            } else {
+                s.append(',');
+            }
+            s.append(unitId);
+        }
+        return s.append(')').toString();
+    }
+
+    private static String windows(List<long[]> windows) {
+        windows.sort(Comparator.comparingLong(w -> w[0]));
+        StringBuilder s = new StringBuilder();
+        long[] current = null;
+        for(long[] w: windows) {
+            if(current != null && w[0] <= current[1]) {
+                current[1] = Math.max(current[1], w[1]);
+                continue;
+            }
+            if(current != null) {
+                s.append("CollectedAt BETWEEN ").append(current[0]).append(" AND ").append(current[1]).append(" OR ");
+            }
+            current = w;
+        }
+        //noinspection DataFlowIssue
+        return s.append("CollectedAt BETWEEN ").append(current[0]).append(" AND ").append(current[1]).toString();
+    }
+
+    /**
+     * Structure to define a probe for {@link #getValuesAt(Class, Collection, Duration)}.
+     * @param unitId Unit Id.
+     * @param variable Variable name.
+     * @param time Time of collection.
+     * @author Syam
+     */
+    public record Probe(Id unitId, String variable, long time) {}
+
     /**
      * Structure to hold time and value.
      * @param time Time.
@@ -0,0 +1,52 @@
+package com.storedobject.iot;
+
+import com.storedobject.core.Id;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Consumption calculator that computes the values from the data collected for a variable. Instances are created
+ * via the factory methods of {@link ConsumptionCalculator}. Since it is a record, units that use the same
+ * calculator can be grouped together so that their values are computed with a single query.
+ *
+ * @param dataClass Data class.
+ * @param variable Name of the variable.
+ * @param type Type of computation.
+ * @param multiplier Multiplier to apply on the computed value.
+ * @param meterReset Value at which the meter resets (used only if the type is {@link #INCREASE}).
+ * @author Syam
+ */
+record DataConsumption(Class<? extends Data> dataClass, String variable, int type, double multiplier,
+                       double meterReset) implements ConsumptionCalculator {
+
+    static final int DIFFERENCE = 0, INCREASE = 1, TO_TRUE = 2, TO_FALSE = 3;
+
+    @Override
+    public Double compute(int resource, Id unitId, long from, long to) {
+        Double c = switch(type) {
+            case DIFFERENCE -> Data.getValueDifference(dataClass, unitId, variable, from, to);
+            case INCREASE -> Data.getValueIncrease(dataClass, unitId, variable, from, to, meterReset);
+            default -> {
+                Integer n = Data.getStateChanged(dataClass, unitId, variable, from, to, type == TO_TRUE);
+                yield n == null ? null : n.doubleValue();
+            }
+        };
+        return c == null ? null : c * multiplier;
+    }
+
+    @Override
+    public Map<Id, Double> compute(int resource, Collection<Id> unitIds, long from, long to) {
+        Map<Id, Double> map = new HashMap<>();
+        switch(type) {
+            case DIFFERENCE -> Data.getValueDifferences(dataClass, unitIds, variable, from, to)
+                    .forEach((id, c) -> map.put(id, c * multiplier));
+            case INCREASE -> Data.getValueIncreases(dataClass, unitIds, variable, from, to, meterReset)
+                    .forEach((id, c) -> map.put(id, c * multiplier));
+            default -> Data.getStateChanged(dataClass, unitIds, variable, from, to, type == TO_TRUE)
+                    .forEach((id, c) -> map.put(id, c * multiplier));
+        }
+        return map;
+    }
+}
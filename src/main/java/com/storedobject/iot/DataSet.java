@@ -1,19 +1,23 @@
 package com.storedobject.iot;
 
-import com.storedobject.common.ArrayListSet;
 import com.storedobject.common.Sequencer;
+import com.storedobject.common.StringList;
 import com.storedobject.common.StyledBuilder;
 import com.storedobject.core.*;
 
 import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.LongStream;
-import java.util.stream.Stream;
+import java.util.stream.*;
 
 public class DataSet {
 
@@ -22,9 +26,10 @@ public class DataSet {
     private static final int REFRESH_RATE = 5;
     private static final Sequencer statusId = new Sequencer();
     private static final List<SiteData> sites = new ArrayList<>();
-    private static final Set<Id> unitsUpdated = new HashSet<>();
+    private static final Queue<Id> unitsUpdated = new ConcurrentLinkedQueue<>();
+    private static final Map<Id, UnitData> unitIndex = new ConcurrentHashMap<>();
     private static long time = 0;
-    private static final Set<Consumer<Id>> consumers = new HashSet<>();
+    private static final Set<Consumer<Id>> consumers = new CopyOnWriteArraySet<>();
     private static final HashMap<String, Function<Object, String>> customFunctions = new HashMap<>();
     static {
         new Timer().schedule(new Refresher(), 3000, REFRESH_RATE * 1000L);
@@ -41,18 +46,31 @@ public class DataSet {
      * @param time Time.
      */
     static void dataUpdated(Set<Id> unitIds, long time) {
-        synchronized(unitsUpdated) {
-            unitsUpdated.addAll(unitIds);
-        }
-        if(lastUpdate.get() < time) {
-            lastUpdate.set(time);
+        UnitData ud;
+        for(Id unitId: unitIds) {
+            ud = unitIndex.get(unitId);
+            if(ud != null) {
+                ud.markDirty();
+            }
         }
+        unitsUpdated.addAll(unitIds);
+        lastUpdate.accumulateAndGet(time, Math::max);
         try {
-            AlertGenerator.dataUpdated(lastUpdate.get());
+            AlertGenerator.dataUpdated(unitIds, lastUpdate.get());
         } catch(Throwable ignored) {
         }
     }
 
+    /**
+     * Get the data node of a unit.
+     *
+     * @param unitId Id of the unit.
+     * @return Data node or null if the unit is not monitored.
+     */
+    static UnitData getUnitData(Id unitId) {
+        return unitIndex.get(unitId);
+    }
+
     static void pingReceived(long time) {
         if(lastPing.get() < time) {
             lastPing.set(time);
@@ -64,8 +82,8 @@ public class DataSet {
      * utilization too.
      */
     static void statisticsComputed(Site site) {
-        resetStatistics(sites, site);
-        informConsumers(true);
+        resetStatistics(site);
+        informConsumers(blockIds());
     }
 
     /**
@@ -98,6 +116,7 @@ public class DataSet {
         try {
             AlertGenerator.clearAlerts();
             sites.clear();
+            unitIndex.clear();
             customFunctions.clear();
             StoredObject.list(Site.class, "Active").forEach(SiteData::new);
         } catch(Throwable ignored) {
@@ -117,53 +136,55 @@ public class DataSet {
 
     public static void register(Consumer<Id> consumer) {
         if(consumer != null) {
-            Set<Id> blockIds = new HashSet<>();
-            synchronized(consumers) {
-                try {
-                    visitUnits(u -> blockIds.add(u.getBlockId()));
-                    for(Id id: blockIds) {
-                        consumer.accept(id);
-                    }
-                    consumers.add(consumer);
-                } catch(Throwable ignored) {
+            try {
+                for(Id id: blockIds()) {
+                    consumer.accept(id);
                 }
+                consumers.add(consumer);
+            } catch(Throwable ignored) {
             }
         }
     }
 
     public static void unregister(Consumer<Id> consumer) {
         if(consumer != null) {
-            synchronized(consumers) {
-                consumers.remove(consumer);
-            }
+            consumers.remove(consumer);
         }
     }
 
-    private static void resetStatistics(List<? extends AbstractData> rows, Site site) {
-        synchronized(sites) {
-            rows.stream().filter(r -> {
-                if(r instanceof SiteData sd) {
-                    return sd.site.getId().equals(site.getId());
-                }
-                return true;
-            }).forEach(r -> {
-                if(r instanceof UnitData ud) {
-                    ud.unit.resetConsumption();
-                    ud.unit.getBlock().resetConsumption();
-                    ud.unit.resetStatistics();
-                }
-                resetStatistics(r.children(), site);
-            });
-        }
+    private static Set<Id> blockIds() {
+        Set<Id> blockIds = new HashSet<>();
+        unitIndex.values().forEach(ud -> blockIds.add(ud.unit.getBlockId()));
+        return blockIds;
     }
 
-    private static void markDirty(List<? extends AbstractData> rows) {
-        synchronized(sites) {
-            rows.forEach(r -> {
-                r.cellStatusUpdated = false;
-                markDirty(r.children());
-            });
+    private static void resetStatistics(Site site) {
+        unitIndex.values().forEach(ud -> {
+            if(ud.getSite().getId().equals(site.getId())) {
+                ud.unit.resetConsumption();
+                ud.unit.getBlock().resetConsumption();
+                ud.unit.resetStatistics();
+            }
+        });
+    }
+
+    /**
+     * Collect the blocks of the units updated since the last tick. (The units are already marked as dirty when the
+     * update was received).
+     *
+     * @return Ids of the blocks that contain the updated units.
+     */
+    private static Set<Id> blocksUpdated() {
+        Set<Id> blocksUpdated = new HashSet<>();
+        Id unitId;
+        UnitData ud;
+        while((unitId = unitsUpdated.poll()) != null) {
+            ud = unitIndex.get(unitId);
+            if(ud != null) {
+                blocksUpdated.add(ud.unit.getBlockId());
+            }
         }
+        return blocksUpdated;
     }
 
     private static class Refresher extends TimerTask {
@@ -174,41 +195,22 @@ public class DataSet {
                 return;
             }
             time = lastUpdate.get();
-            markDirty(sites);
-            informConsumers(false);
+            informConsumers(blocksUpdated());
         }
     }
 
-    private static void informConsumers(boolean allBlocks) {
-        Set<Id> blocksUpdated = new HashSet<>();
-        synchronized(unitsUpdated) {
-            if(allBlocks) {
-                unitsUpdated.clear();
-                visitUnits(u -> blocksUpdated.add(u.getBlockId()));
-            } else {
-                visitUnits(u -> {
-                    if (unitsUpdated.contains(u.getId())) {
-                        blocksUpdated.add(u.getBlockId());
-                    }
-                });
-                unitsUpdated.clear();
-            }
+    private static void informConsumers(Set<Id> blocksUpdated) {
+        if(blocksUpdated.isEmpty()) {
+            return;
         }
-        synchronized(consumers) {
-            if(consumers.isEmpty()) {
-                return;
-            }
-            Set<Consumer<Id>> rejected = new HashSet<>();
-            for(Consumer<Id> consumer: consumers) {
-                try {
-                    for(Id id: blocksUpdated) {
-                        consumer.accept(id);
-                    }
-                } catch(Throwable e) {
-                    rejected.add(consumer);
+        for(Consumer<Id> consumer: consumers) {
+            try {
+                for(Id id: blocksUpdated) {
+                    consumer.accept(id);
                 }
+            } catch(Throwable e) {
+                consumers.remove(consumer);
             }
-            rejected.forEach(consumers::remove);
         }
     }
 
@@ -800,7 +802,7 @@ public class DataSet {
     public abstract static class AbstractData {
 
         private final long id = statusId.next();
-        boolean cellStatusUpdated = false;
+        volatile boolean cellStatusUpdated = false;
         final List<DataStatus<?>> statusList = new ArrayList<>();
 
         public abstract String getName();
@@ -880,7 +882,7 @@ public class DataSet {
                             ud -> {
                                 UnitHeaderData uhr = unitRows.get(ud.getUnitClassName());
                                 if (uhr == null) {
-                                    uhr = new UnitHeaderData(this.site.getId(), ud);
+                                    uhr = new UnitHeaderData(this, ud);
                                     if(!uhr.units.isEmpty()) {
                                         units.add(uhr);
                                         unitRows.put(ud.getUnitClassName(), uhr);
@@ -918,12 +920,15 @@ public class DataSet {
 
     public static class UnitHeaderData extends AbstractData {
 
+        private final SiteData site;
         private final String name;
         private final List<ValueLimit> limits = new ArrayList<>();
         private final List<AlarmSwitch> alarms = new ArrayList<>();
         private final List<UnitData> units = new ArrayList<>();
 
-        private UnitHeaderData(Id siteId, UnitDefinition unitDefinition) {
+        private UnitHeaderData(SiteData site, UnitDefinition unitDefinition) {
+            this.site = site;
+            Id siteId = site.site.getId();
             name = StringUtility.makeLabel(unitDefinition.getUnitClass());
             List<Class<Data>> iotClasses = new ArrayList<>();
             for (UnitDefinition ud:
@@ -974,11 +979,13 @@ public class DataSet {
 
     public static class UnitData extends AbstractData {
 
+        private final UnitHeaderData header;
         private final String name;
         private final Unit unit;
         private final List<Class<Data>> iotClasses;
 
         private UnitData(UnitHeaderData header, Unit unit, List<Class<Data>> iotClasses) {
+            this.header = header;
             this.unit = unit;
             this.iotClasses = iotClasses;
             name = unit.toDisplay();
@@ -1004,12 +1011,26 @@ public class DataSet {
                         }
                     }
             );
+            unitIndex.put(unit.getId(), this);
+        }
+
+        /**
+         * Mark this unit and its parents as dirty so that their status is recomputed when accessed next time.
+         */
+        private void markDirty() {
+            cellStatusUpdated = false;
+            header.cellStatusUpdated = false;
+            header.site.cellStatusUpdated = false;
         }
 
         public Unit getUnit() {
             return unit;
         }
 
+        Site getSite() {
+            return header.site.site;
+        }
+
         @Override
         public String getName() {
             return name;
@@ -1043,78 +1064,388 @@ public class DataSet {
         return a2 - a1;
     }
 
+    /**
+     * Down-sampling modes that can be used while loading {@link DataValues}.
+     */
+    public enum Sampling {
+
+        /**
+         * No down-sampling. All the samples are loaded and the nearest sample is picked while streaming.
+         */
+        NEAREST(null),
+        /**
+         * Average value of each time bucket.
+         */
+        AVERAGE("Avg"),
+        /**
+         * Minimum value of each time bucket.
+         */
+        MINIMUM("Min"),
+        /**
+         * Maximum value of each time bucket.
+         */
+        MAXIMUM("Max"),
+        /**
+         * Largest-Triangle-Three-Buckets - Picks the samples that best preserve the visual shape of the series.
+         */
+        LTTB(null);
+
+        private final String function;
+
+        Sampling(String function) {
+            this.function = function;
+        }
+
+        /**
+         * Check whether this mode can be computed by the database.
+         *
+         * @return True if the buckets can be computed via SQL.
+         */
+        boolean isAggregate() {
+            return function != null;
+        }
+    }
+
     public static class DataValues {
 
         long startTime, endTime;
         private final List<? extends DataValue> values;
+        private Sampling sampling = Sampling.NEAREST;
+        private int points;
 
         public DataValues(List<? extends DataValue> values, long from, long to) {
+            this(values, from, to, Sampling.NEAREST, 0);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param values Values to load.
+         * @param from Start time.
+         * @param to End time.
+         * @param sampling Down-sampling mode.
+         * @param points Maximum number of points to load per value (Zero means no limit).
+         */
+        public DataValues(List<? extends DataValue> values, long from, long to, Sampling sampling, int points) {
             values.removeIf(dv -> dv.getDataStatus() == null || dv.getData() == null);
             values.forEach(DataValue::sanitize);
             values.removeIf(dv -> dv.getData() == null || dv.ioTClass == null);
             this.values = values;
             values.forEach(dv -> dv.dataValues = this);
-            load(from, to);
+            load(from, to, sampling, points);
         }
 
         public List<? extends DataValue> getDataValues() {
             return values;
         }
 
+        /**
+         * Get the down-sampling mode currently used.
+         *
+         * @return Down-sampling mode.
+         */
+        public Sampling getSampling() {
+            return sampling;
+        }
+
+        /**
+         * Get the maximum number of points loaded per value.
+         *
+         * @return Maximum number of points (Zero means no limit).
+         */
+        public int getPoints() {
+            return points;
+        }
+
+        /**
+         * Load the values for the given period and down-sample them. Bucket-based modes ({@link Sampling#AVERAGE},
+         * {@link Sampling#MINIMUM} and {@link Sampling#MAXIMUM}) are computed by the database whenever possible so
+         * that only one row per bucket is transferred. {@link Sampling#LTTB} is applied after loading.
+         *
+         * @param from Start time.
+         * @param to End time.
+         * @param sampling Down-sampling mode.
+         * @param points Maximum number of points to load per value (Zero means no limit).
+         */
+        public void load(long from, long to, Sampling sampling, int points) {
+            this.sampling = sampling == null ? Sampling.NEAREST : sampling;
+            this.points = Math.max(points, 0);
+            load(from, to);
+        }
+
         public void load(long from, long to) {
             String condition = "CollectedAt BETWEEN " + from + " AND " + to + " AND Unit=",
                     conditionStart = "CollectedAt < " + from + " AND Unit=";
             startTime = from;
             endTime = to;
-            ArrayListSet<Class<Data>> classes = new ArrayListSet<>();
-            Map<Class<?>, Id> unitIds = new HashMap<>();
+            // Buckets are aligned to the minute so that DataValue.add() never moves a sample across buckets
+            long bucketStart = (from / 60000) * 60000, bucket = bucket(from, to);
+            Map<Source, List<DataValue>> sources = new LinkedHashMap<>();
+            boolean aggregate = bucket > 0 && sampling.isAggregate();
             values.forEach(dv -> {
                 dv.values.clear();
-                classes.add(dv.ioTClass);
-                unitIds.put(dv.ioTClass, dv.dataStatus.unit.getId());
+                dv.raw = aggregate;
+                sources.computeIfAbsent(new Source(dv.ioTClass, dv.dataStatus.unit.getId()), s -> new ArrayList<>())
+                        .add(dv);
             });
-            ObjectIterator<Data> objects;
-            while(!classes.isEmpty()) {
-                Class<Data> ioTObjectClass = classes.removeFirst();
-                objects = StoredObject.list(ioTObjectClass, condition + unitIds.get(ioTObjectClass), "CollectedAt");
-                try {
-                    boolean found = false;
-                    for(Data object : objects) {
-                        found = true;
-                        extractValue(object);
+            List<DataValue> reflective = new ArrayList<>();
+            sources.forEach((source, dvs) -> {
+                reflective.clear();
+                ColumnReader columns = new ColumnReader(source.dataClass);
+                dvs.forEach(dv -> {
+                    if(!columns.add(dv)) {
+                        reflective.add(dv);
                     }
-                    if(!found) {
-                        Data object = StoredObject.list(ioTObjectClass, conditionStart + unitIds.get(ioTObjectClass),
-                                "CollectedAt DESC", true).findFirst();
-                        if(object != null) {
-                            extractValue(object);
-                        }
+                });
+                if(!columns.isEmpty()) {
+                    int rows = -1;
+                    if(aggregate) {
+                        rows = columns.aggregate(source, condition + source.unitId, bucketStart, bucket, sampling);
+                    }
+                    if(rows < 0) {
+                        rows = columns.load(source, condition + source.unitId, "CollectedAt", false, 0);
                     }
-                } finally {
-                    objects.close();
+                    if(rows == 0) {
+                        columns.load(source, conditionStart + source.unitId, "CollectedAt DESC", true, 1);
+                    }
+                }
+                if(!reflective.isEmpty()) {
+                    loadObjects(source, reflective, condition + source.unitId, conditionStart + source.unitId);
                 }
+            });
+            if(bucket > 0) {
+                values.forEach(dv -> {
+                    if(sampling == Sampling.LTTB) {
+                        dv.values.lttb(points);
+                    } else {
+                        dv.values.aggregate(bucketStart, bucket, sampling);
+                    }
+                    dv.raw = false;
+                });
+            }
+        }
+
+        /**
+         * Compute the bucket size for down-sampling.
+         *
+         * @return Bucket size in milliseconds (a multiple of 1 minute), or zero if no down-sampling is required.
+         */
+        private long bucket(long from, long to) {
+            if(points <= 0 || sampling == Sampling.NEAREST || to < from) {
+                return 0;
             }
+            long minutes = ((to - from) / 60000) + 1;
+            return ((minutes + points - 1) / points) * 60000;
         }
 
-        private void extractValue(Data object) {
+        /**
+         * Load values by materializing the data objects. This is used only for values that can not be read directly
+         * from a column (for example, values that implement {@link HasValue}).
+         */
+        private static void loadObjects(Source source, List<DataValue> dvs, String condition, String conditionStart) {
+            ObjectIterator<Data> objects = StoredObject.list(source.dataClass, condition, "CollectedAt");
+            try {
+                boolean found = false;
+                for(Data object : objects) {
+                    found = true;
+                    extractValue(object, dvs);
+                }
+                if(!found) {
+                    Data object = StoredObject.list(source.dataClass, conditionStart, "CollectedAt DESC", true)
+                            .findFirst();
+                    if(object != null) {
+                        extractValue(object, dvs);
+                    }
+                }
+            } finally {
+                objects.close();
+            }
+        }
+
+        private static void extractValue(Data object, List<DataValue> dvs) {
             long time = object.getCollectedAt();
-            values.stream().filter(dv -> dv.ioTClass == object.getClass()
-                            && object.getUnitId().equals(((UnitData)dv.getData()).unit.getId()))
-                    .forEach(dv -> {
-                        try {
-                            Method m = dv.dataStatus.valueDefinition.getValueMethodForGet();
-                            if(dv.dataStatus instanceof LimitStatus) {
-                                if(HasValue.class.isAssignableFrom(m.getReturnType())) {
-                                    dv.add(time, ((HasValue) m.invoke(object)).getValue());
-                                } else {
-                                    dv.add(time, (Double) m.invoke(object));
-                                }
-                            } else {
-                                dv.add(time, ((boolean) m.invoke(object)) ? 1 : 0);
-                            }
-                        } catch(Throwable ignored) {
+            dvs.forEach(dv -> {
+                try {
+                    Method m = dv.dataStatus.valueDefinition.getValueMethodForGet();
+                    if(dv.dataStatus instanceof LimitStatus) {
+                        if(HasValue.class.isAssignableFrom(m.getReturnType())) {
+                            dv.add(time, ((HasValue) m.invoke(object)).getValue());
+                        } else {
+                            dv.add(time, (Double) m.invoke(object));
+                        }
+                    } else {
+                        dv.add(time, ((boolean) m.invoke(object)) ? 1 : 0);
+                    }
+                } catch(Throwable ignored) {
+                }
+            });
+        }
+
+        /**
+         * Source of values - a data class and the unit to which the data belongs.
+         *
+         * @param dataClass Data class.
+         * @param unitId Unit Id.
+         */
+        private record Source(Class<Data> dataClass, Id unitId) {}
+
+        /**
+         * Columnar reader that selects only the "CollectedAt" and the required value columns of a data class. Each
+         * selected column is mapped to the data values it feeds, so that no object is materialized and no reflective
+         * call is made while reading the rows.
+         */
+        private static class ColumnReader {
+
+            private final StringList attributes;
+            private final List<String> names = new ArrayList<>();
+            private final List<Boolean> booleans = new ArrayList<>();
+            private final List<DataValue> dvs = new ArrayList<>();
+            private final List<Integer> index = new ArrayList<>();
+            private long[] times = new long[64];
+            private double[][] buffer;
+            private boolean[][] nulls;
+
+            ColumnReader(Class<Data> dataClass) {
+                attributes = ClassAttribute.get(dataClass).getAttributes();
+            }
+
+            /**
+             * Add a data value to be read. Only the values whose getters correspond to the attributes of the data
+             * class are read from the columns, computed values are not.
+             *
+             * @param dv Data value.
+             * @return False if the value can not be read directly from a column.
+             */
+            boolean add(DataValue dv) {
+                Method m = dv.dataStatus.valueDefinition.getValueMethodForGet();
+                if(m == null) {
+                    return false;
+                }
+                Class<?> type = m.getReturnType();
+                if(dv.dataStatus instanceof LimitStatus) {
+                    if(type != double.class && type != Double.class) {
+                        return false;
+                    }
+                } else if(type != boolean.class && type != Boolean.class) {
+                    return false;
+                }
+                String name = m.getName().substring(3);
+                if(!attributes.contains(name)) {
+                    return false;
+                }
+                int i = names.indexOf(name);
+                if(i < 0) {
+                    i = names.size();
+                    names.add(name);
+                    booleans.add(!(dv.dataStatus instanceof LimitStatus));
+                }
+                dvs.add(dv);
+                index.add(i);
+                return true;
+            }
+
+            boolean isEmpty() {
+                return dvs.isEmpty();
+            }
+
+            /**
+             * Read the rows and pass the values to the respective data values.
+             *
+             * @return Number of rows read.
+             */
+            int load(Source source, String condition, String order, boolean any, int limit) {
+                return read(source, "CollectedAt," + String.join(",", names), condition, order, any, limit);
+            }
+
+            /**
+             * Read one aggregated row per time bucket and pass the values to the respective data values.
+             *
+             * @return Number of rows read or -1 if the database could not compute the aggregates.
+             */
+            int aggregate(Source source, String condition, long from, long bucket, Sampling sampling) {
+                StringBuilder columns = new StringBuilder("Min(CollectedAt)");
+                for(int c = 0; c < names.size(); c++) {
+                    columns.append(',').append(sampling.function).append('(');
+                    if(booleans.get(c)) {
+                        columns.append("CASE WHEN ").append(names.get(c)).append(" THEN 1 ELSE 0 END");
+                    } else {
+                        columns.append(names.get(c));
+                    }
+                    columns.append(')');
+                }
+                int rows = 0;
+                try(Query query = QueryBuilder.from(source.dataClass).columns(columns.toString()).where(condition)
+                        .groupBy("(CollectedAt - " + from + ") / " + bucket).orderBy("1").query()) {
+                    for(ResultSet rs: query) {
+                        rows = row(rs, rows, true);
+                    }
+                } catch(Exception e) {
+                    ApplicationServer.log("Unable to aggregate IoT data of " + source.dataClass.getName(), e);
+                    return -1;
+                }
+                return feed(rows);
+            }
+
+            private int read(Source source, String columnNames, String condition, String order, boolean any,
+                             int limit) {
+                int rows = 0;
+                try(Query query = limit <= 0
+                        ? StoredObject.query(source.dataClass, columnNames, condition, order, any)
+                        : StoredObject.query(null, source.dataClass, columnNames, condition, order, any, 0, limit,
+                        null)) {
+                    for(ResultSet rs: query) {
+                        rows = row(rs, rows, false);
+                    }
+                } catch(SQLException e) {
+                    ApplicationServer.log("Unable to read IoT data", e);
+                }
+                return feed(rows);
+            }
+
+            private int row(ResultSet rs, int row, boolean aggregated) throws SQLException {
+                int columns = names.size();
+                if(buffer == null) {
+                    buffer = new double[columns][times.length];
+                    nulls = new boolean[columns][times.length];
+                }
+                if(row == times.length) {
+                    grow();
+                }
+                times[row] = rs.getLong(1);
+                for(int c = 0; c < columns; c++) {
+                    if(!aggregated && booleans.get(c)) {
+                        buffer[c][row] = rs.getBoolean(c + 2) ? 1 : 0;
+                    } else {
+                        buffer[c][row] = rs.getDouble(c + 2);
+                    }
+                    nulls[c][row] = rs.wasNull();
+                }
+                return row + 1;
+            }
+
+            private int feed(int rows) {
+                DataValue dv;
+                int c;
+                for(int i = 0; i < dvs.size(); i++) {
+                    dv = dvs.get(i);
+                    c = index.get(i);
+                    for(int r = 0; r < rows; r++) {
+                        if(!nulls[c][r]) {
+                            dv.add(times[r], buffer[c][r]);
                         }
-                    });
+                    }
+                }
+                return rows;
+            }
+
+            private void grow() {
+                int size = times.length << 1;
+                times = Arrays.copyOf(times, size);
+                for(int c = 0; c < buffer.length; c++) {
+                    buffer[c] = Arrays.copyOf(buffer[c], size);
+                    nulls[c] = Arrays.copyOf(nulls[c], size);
+                }
+            }
         }
 
         public long getStartTime() {
@@ -1137,7 +1468,7 @@ public class DataSet {
 
         public void dispose() {
             values.forEach(dv -> {
-                dv.values.clear();
+                dv.values.release();
                 dv.dataValues = null;
             });
             values.clear();
@@ -1150,8 +1481,10 @@ public class DataSet {
         private AbstractData data;
         final DataStatus<?> dataStatus;
         Class<Data> ioTClass;
-        final List<ValueAndTime> values = new ArrayList<>();
+        final TimeSeries values = new TimeSeries();
         DataValues dataValues;
+        // While true, samples are kept as they are (not averaged per minute) so that they can be aggregated
+        boolean raw;
 
         public DataValue(AbstractData data, DataStatus<?> dataStatus) {
             this.data = data;
@@ -1212,35 +1545,47 @@ public class DataSet {
         }
 
         void add(long time, double value) {
+            if(raw) {
+                values.add(time, value);
+                return;
+            }
             time = (time / 60000) * 60000;
-            if(!values.isEmpty()) {
-                ValueAndTime v = values.getLast();
-                if(v.time == time) {
-                    value = (v.value + value) / 2;
-                    values.removeLast();
-                }
+            if(!values.isEmpty() && values.lastTime() == time) {
+                values.setLastValue((values.lastValue() + value) / 2);
+                return;
             }
-            values.add(new ValueAndTime(time, value));
+            values.add(time, value);
         }
 
-        private record ValueAndTime(long time, double value) {}
-
         public Stream<Double> stream(int step) {
+            return doubleStream(step).boxed();
+        }
+
+        /**
+         * Get the values resampled at the given step (in milliseconds) over the period of the {@link DataValues}.
+         * For each step, the sample that is nearest to (and not later than) that time is used.
+         *
+         * @param step Step in milliseconds (5 minutes is assumed if zero or negative).
+         * @return Stream of values.
+         */
+        public DoubleStream doubleStream(int step) {
             if(dataValues == null || values.isEmpty()) {
-                return Stream.empty();
+                return DoubleStream.empty();
             }
-            return Utility.stream(new VTIterator(step)).map(vt -> vt.value);
+            Resampler resampler = new Resampler(step);
+            return StreamSupport.doubleStream(Spliterators.spliterator(resampler, resampler.count(),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
         }
 
         public Stream<Object[]> rawStream(int step) {
             if(dataValues == null || values.isEmpty()) {
                 return Stream.empty();
             }
-            AtomicLong time = new AtomicLong(dataValues.startTime);
-            return Utility.stream(new VTIterator(step)).map(vt -> {
-                Object[] v =  new Object[] { vt.time(), vt.value(), time.get() };
-                time.set(time.get() + step);
-                return v;
+            Resampler resampler = new Resampler(step);
+            return LongStream.range(0, resampler.count()).mapToObj(i -> {
+                long time = resampler.time;
+                double value = resampler.nextDouble();
+                return new Object[] { resampler.sampleTime, value, time };
             });
         }
 
@@ -1248,36 +1593,56 @@ public class DataSet {
             if(dataValues == null || values.isEmpty()) {
                 return Stream.empty();
             }
-            return values.stream().map(vt -> new Object[] { vt.time(), vt.value() });
+            return IntStream.range(0, values.size()).mapToObj(i -> new Object[] { values.time(i), values.value(i) });
+        }
+
+        /**
+         * Get the raw sample times (without resampling).
+         *
+         * @return Stream of sample times.
+         */
+        public LongStream timeStream() {
+            return values.times();
+        }
+
+        /**
+         * Get the raw sample values (without resampling).
+         *
+         * @return Stream of sample values.
+         */
+        public DoubleStream valueStream() {
+            return values.values();
         }
 
         public int size() {
             return values.size();
         }
 
-        private class VTIterator implements Iterator<ValueAndTime> {
+        /**
+         * Iterator that resamples the values at fixed steps without allocating anything per step.
+         */
+        private class Resampler implements PrimitiveIterator.OfDouble {
 
             private int index = 0;
-            private long time;
+            private long time, sampleTime;
             private final long step;
 
-            private VTIterator(long step) {
+            private Resampler(long step) {
                 this.step = step <= 0 ? (5 * 60000L) : step;
                 this.time = dataValues.startTime;
             }
 
+            private long count() {
+                return time > dataValues.endTime ? 0 : ((dataValues.endTime - time) / step) + 1;
+            }
+
             @Override
             public boolean hasNext() {
                 return time <= dataValues.endTime;
             }
 
-            private ValueAndTime v() {
-                time += step;
-                return values.get(index);
-            }
-
             private boolean tryNext() {
-                long t = values.get(index).time;
+                long t = values.time(index);
                 if(time == t) {
                     return false;
                 }
@@ -1286,7 +1651,7 @@ public class DataSet {
                         --index;
                         return false;
                     }
-                    t = values.get(index).time;
+                    t = values.time(index);
                     if(time == t) {
                         return false;
                     }
@@ -1300,26 +1665,174 @@ public class DataSet {
             }
 
             @Override
-            public ValueAndTime next() {
+            public double nextDouble() {
                 if(time > dataValues.endTime) {
                     throw new NoSuchElementException();
                 }
                 //noinspection StatementWithEmptyBody
                 while(tryNext());
-                return v();
+                time += step;
+                sampleTime = values.time(index);
+                return values.value(index);
             }
         }
     }
 
-    private static void visitUnits(Consumer<Unit> consumer) {
-        synchronized(sites) {
-            for(SiteData sd: sites) {
-                for(UnitHeaderData uhd: sd.units) {
-                    for(UnitData ud: uhd.units) {
-                        consumer.accept(ud.unit);
+    /**
+     * Growable time series backed by parallel primitive arrays.
+     */
+    static final class TimeSeries {
+
+        private static final int INITIAL_CAPACITY = 64;
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(long time, double value) {
+            if(size == times.length) {
+                int capacity = size + (size >> 1);
+                times = Arrays.copyOf(times, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            times[size] = time;
+            values[size++] = value;
+        }
+
+        long time(int index) {
+            return times[index];
+        }
+
+        double value(int index) {
+            return values[index];
+        }
+
+        long lastTime() {
+            return times[size - 1];
+        }
+
+        double lastValue() {
+            return values[size - 1];
+        }
+
+        void setLastValue(double value) {
+            values[size - 1] = value;
+        }
+
+        LongStream times() {
+            return Arrays.stream(times, 0, size);
+        }
+
+        DoubleStream values() {
+            return Arrays.stream(values, 0, size);
+        }
+
+        /**
+         * Reduce the entries to one entry per time bucket. The time of each entry is the minute of its first sample.
+         *
+         * @param from Start time of the first bucket.
+         * @param bucket Bucket size.
+         * @param sampling Aggregation to apply within each bucket.
+         */
+        void aggregate(long from, long bucket, Sampling sampling) {
+            int n = 0, i = 0, j, count;
+            long b, t;
+            double v;
+            while(i < size) {
+                b = Math.floorDiv(times[i] - from, bucket);
+                t = times[i];
+                v = values[i];
+                count = 1;
+                for(j = i + 1; j < size && Math.floorDiv(times[j] - from, bucket) == b; j++) {
+                    switch(sampling) {
+                        case MINIMUM -> v = Math.min(v, values[j]);
+                        case MAXIMUM -> v = Math.max(v, values[j]);
+                        default -> v += values[j];
                     }
+                    ++count;
+                }
+                if(sampling == Sampling.AVERAGE) {
+                    v /= count;
                 }
+                times[n] = (t / 60000) * 60000;
+                values[n++] = v;
+                i = j;
             }
+            size = n;
+        }
+
+        /**
+         * Reduce the entries using the Largest-Triangle-Three-Buckets algorithm.
+         *
+         * @param threshold Number of entries to retain.
+         */
+        void lttb(int threshold) {
+            if(threshold < 3 || threshold >= size) {
+                return;
+            }
+            long[] t = new long[threshold];
+            double[] v = new double[threshold];
+            long origin = times[0];
+            double every = (double) (size - 2) / (threshold - 2), avgX, avgY, ax, ay, area, maxArea;
+            int a = 0, n = 0, avgStart, avgEnd, rangeStart, rangeEnd, next;
+            t[n] = times[0];
+            v[n++] = values[0];
+            for(int i = 0; i < threshold - 2; i++) {
+                avgStart = (int) Math.floor((i + 1) * every) + 1;
+                avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+                avgX = 0;
+                avgY = 0;
+                for(int k = avgStart; k < avgEnd; k++) {
+                    avgX += times[k] - origin;
+                    avgY += values[k];
+                }
+                avgX /= (avgEnd - avgStart);
+                avgY /= (avgEnd - avgStart);
+                rangeStart = (int) Math.floor(i * every) + 1;
+                rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+                ax = times[a] - origin;
+                ay = values[a];
+                maxArea = -1;
+                next = rangeStart;
+                for(int k = rangeStart; k < rangeEnd; k++) {
+                    area = Math.abs((ax - avgX) * (values[k] - ay) - (ax - (times[k] - origin)) * (avgY - ay));
+                    if(area > maxArea) {
+                        maxArea = area;
+                        next = k;
+                    }
+                }
+                t[n] = times[next];
+                v[n++] = values[next];
+                a = next;
+            }
+            t[n] = times[size - 1];
+            v[n++] = values[size - 1];
+            times = t;
+            values = v;
+            size = n;
+        }
+
+        /**
+         * Clear the entries. The current capacity is retained so that a reload doesn't need to grow it again.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Clear the entries and release the memory.
+         */
+        void release() {
+            size = 0;
+            times = new long[INITIAL_CAPACITY];
+            values = new double[INITIAL_CAPACITY];
         }
     }
 }
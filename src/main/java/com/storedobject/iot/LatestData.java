@@ -0,0 +1,224 @@
+package com.storedobject.iot;
+
+import com.storedobject.core.Id;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared in-memory cache of the latest {@link Data} record per data class and unit. The cache is updated whenever
+ * a data instance is saved and committed (see {@link Data#saved()}) and it is read by
+ * {@link Data#getLatest(Class, Id)}, so that the dashboards, controllers and reports need not scan the database for the
+ * latest values.
+ * <p>The latest instance itself is cached and it is replaced by {@link #put(Data)} whenever a newer instance is
+ * committed, so a cache hit doesn't touch the database. The instance returned is shared by all the callers and it
+ * must not be modified. If the data may be saved by other processes (another server), a time-to-live may be set so
+ * that an entry is validated against the database (Max(Id) of the unit) when it is read after that time.</p>
+ * <p>The cache is bounded. When the number of entries exceeds the capacity, the least recently read entries are
+ * evicted.</p>
+ *
+ * @author Syam
+ */
+public final class LatestData {
+
+    private static final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+    private static volatile int capacity = 100000;
+    private static volatile long timeToLive = 0L;
+
+    private LatestData() {
+    }
+
+    /**
+     * Get the latest data instance. If not available in the cache (or if the cached entry is stale), it is looked up
+     * in the database.
+     *
+     * @param dataClass Data class.
+     * @param unitId Unit Id.
+     * @param <D> Data type.
+     * @return Latest data instance (shared, must not be modified) or null if not available.
+     */
+    public static <D extends Data> D get(Class<D> dataClass, Id unitId) {
+        Key key = new Key(dataClass, unitId);
+        Entry entry = cache.get(key);
+        if(entry != null) {
+            if(timeToLive > 0 && System.currentTimeMillis() - entry.validated > timeToLive) {
+                Id id = Data.latestId(dataClass, unitId);
+                if(id == null || !id.equals(entry.id)) {
+                    cache.remove(key, entry);
+                    entry = null;
+                } else {
+                    entry.validated = System.currentTimeMillis();
+                }
+            }
+            if(entry != null && dataClass.isInstance(entry.data)) {
+                hits.incrementAndGet();
+                entry.accessed = System.nanoTime();
+                return dataClass.cast(entry.data);
+            }
+        }
+        misses.incrementAndGet();
+        D data = Data.loadLatest(dataClass, unitId);
+        if(data != null) {
+            put(data);
+        }
+        return data;
+    }
+
+    /**
+     * Put a data instance into the cache. It replaces the cached entry only if it is not older. The entry is
+     * cached against its own class and all the super-classes (except {@link Data} itself) so that the look-ups
+     * via a super-class are also served.
+     * <p>Note: This should be invoked only for the instances that are already committed to the database.</p>
+     *
+     * @param data Data instance.
+     */
+    public static void put(Data data) {
+        Id unitId = data.getUnitId();
+        if(Id.isNull(unitId) || Id.isNull(data.getId())) {
+            return;
+        }
+        Entry entry = new Entry(data);
+        for(Class<?> c = data.getClass(); c != Data.class && c != null; c = c.getSuperclass()) {
+            cache.merge(new Key(c, unitId), entry, (old, e) -> old.collectedAt > e.collectedAt ? old : e);
+        }
+        if(cache.size() > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Set the time-to-live of the cached entries. Once this time is over, an entry is validated against the
+     * database when it is read next. This is required only if the data may be saved by other processes.
+     *
+     * @param timeToLive Time-to-live in milliseconds (zero, the default, means never validate).
+     */
+    public static void setTimeToLive(long timeToLive) {
+        LatestData.timeToLive = Math.max(0, timeToLive);
+    }
+
+    /**
+     * Get the time-to-live of the cached entries.
+     *
+     * @return Time-to-live in milliseconds.
+     */
+    public static long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Remove the cached entry of a unit.
+     *
+     * @param dataClass Data class.
+     * @param unitId Unit Id.
+     */
+    public static void remove(Class<? extends Data> dataClass, Id unitId) {
+        cache.remove(new Key(dataClass, unitId));
+    }
+
+    /**
+     * Clear the cache. (Metrics are not reset).
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Set the maximum number of entries to be kept in the cache.
+     *
+     * @param capacity Capacity (minimum 100).
+     */
+    public static void setCapacity(int capacity) {
+        LatestData.capacity = Math.max(100, capacity);
+        if(cache.size() > LatestData.capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Get the maximum number of entries kept in the cache.
+     *
+     * @return Capacity.
+     */
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of entries currently in the cache.
+     *
+     * @return Size of the cache.
+     */
+    public static int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Get the number of times the latest data was found in the cache.
+     *
+     * @return Hit count.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of times the latest data was not found in the cache.
+     *
+     * @return Miss count.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries evicted so far.
+     *
+     * @return Eviction count.
+     */
+    public static long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static synchronized void evict() {
+        int excess = cache.size() - capacity;
+        if(excess <= 0) {
+            return;
+        }
+        excess += capacity / 10; // Make some room so that we don't need to evict for every addition
+        // Access times are copied first because they keep changing while we sort
+        List<Victim> victims = new ArrayList<>();
+        cache.forEach((k, e) -> victims.add(new Victim(k, e, e.accessed)));
+        victims.sort(Comparator.comparingLong(Victim::accessed));
+        for(int i = 0; i < excess && i < victims.size(); i++) {
+            if(cache.remove(victims.get(i).key, victims.get(i).entry)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private record Key(Class<?> dataClass, Id unitId) {
+    }
+
+    private record Victim(Key key, Entry entry, long accessed) {
+    }
+
+    private static class Entry {
+
+        private final Data data;
+        private final Id id;
+        private final long collectedAt;
+        private volatile long validated = System.currentTimeMillis();
+        private volatile long accessed = System.nanoTime();
+
+        private Entry(Data data) {
+            this.data = data;
+            this.id = data.getId();
+            this.collectedAt = data.getCollectedAt();
+        }
+    }
+}
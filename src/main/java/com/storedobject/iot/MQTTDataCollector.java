@@ -27,6 +27,7 @@ public class MQTTDataCollector extends DaemonJob {
     @Override
     public void execute() throws Throwable {
         create();
+        StatisticsRollup.start(getTransactionManager());
         mqtt.collect(getTransactionManager());
     }
 
@@ -53,6 +54,7 @@ public class MQTTDataCollector extends DaemonJob {
 
     @Override
     public void shutdown() {
+        StatisticsRollup.stop();
         if (mqtt != null) {
             mqtt.removeAllListeners();
             mqtt.disconnect();
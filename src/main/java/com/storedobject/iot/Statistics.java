@@ -25,6 +25,9 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
     private int year;
     private int count = 0;
     double min = Double.MAX_VALUE, max = Double.MIN_VALUE, mean, sD;
+    // Sum of squared deviations from the mean (Welford). NaN means it is not yet derived from the SD.
+    private double m2 = Double.NaN;
+    private boolean sDStale = false;
 
     /**
      * Default constructor for the Statistics class.
@@ -156,6 +159,7 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
      */
     public void setCount(int count) {
         this.count = count;
+        m2 = Double.NaN;
     }
 
     /**
@@ -232,6 +236,8 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
      */
     public void setSD(double sd) {
         this.sD = sd;
+        m2 = Double.NaN;
+        sDStale = false;
     }
 
     /**
@@ -241,6 +247,10 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
      */
     @Column(order = 3400, caption = "SD")
     public double getSD() {
+        if(sDStale) {
+            sD = count == 0 ? 0 : Math.sqrt(m2 / count);
+            sDStale = false;
+        }
         return sD;
     }
 
@@ -307,31 +317,29 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
     @Override
     public String toDisplay() {
         return StringUtility.makeLabel(name) + " (" + getUnit().toDisplay() + ") Count = " + count
-                + ", Min = " + min + ", Max = " + max + ", Mean = " + mean + ", SD = " + sD
+                + ", Min = " + min + ", Max = " + max + ", Mean = " + mean + ", SD = " + getSD()
                 + " (Year: " + year
                 + (this instanceof YearlyStatistics ? "" : (", " + getPeriodName() + ": " + getPeriod())) + ")";
     }
 
     /**
-     * Calculates a statistical value based on the count and other statistical measures.
-     * The value returned depends on the number of elements defined by the "count" field:
-     * - If count is 0, it returns 0.
-     * - If count is 1, it returns the mean value.
-     * - Otherwise, it returns the squared standard deviation (sD * sD) multiplied by the count.
+     * Retrieves the sum of squared deviations from the mean. If it is not yet known (for example, the instance is
+     * just loaded from the database), it is derived from the standard deviation.
      *
-     * @return A double representing the computed statistical value based on conditions of the count field.
+     * @return Sum of squared deviations from the mean.
      */
-    private double ss() {
-        return switch (count) {
-            case 0 -> 0;
-            case 1 -> mean;
-            default -> sD * sD * count;
-        };
+    private double m2() {
+        if(Double.isNaN(m2)) {
+            m2 = count < 2 ? 0 : sD * sD * count;
+        }
+        return m2;
     }
 
     /**
      * Adds a value to the statistics and updates the minimum, maximum, mean,
      * standard deviation, and the count of values accordingly.
+     * <p>Welford's online algorithm is used, so the computation is numerically stable and the standard deviation is
+     * derived only when it is requested.</p>
      *
      * @param value The value to be added to the statistical data.
      */
@@ -341,6 +349,8 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
             max = value;
             mean = value;
             sD = 0;
+            m2 = 0;
+            sDStale = false;
             ++count;
             return;
         }
@@ -350,14 +360,17 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
         if(value > max) {
             max = value;
         }
-        double ss = ss() + ((value - mean) * (value - mean));
-        mean = ((mean * count) + value) / (count + 1);
+        double m2 = m2(), delta = value - mean;
         ++count;
-        sD = Math.sqrt((ss / count));
+        mean += delta / count;
+        this.m2 = m2 + delta * (value - mean);
+        sDStale = true;
     }
 
     /**
      * Adds the statistical data from another `Statistics` object to this one.
+     * <p>The accumulators are merged using the parallel variant of Welford's algorithm (Chan et al.), so the
+     * result is the same as adding all the individual values of the other instance.</p>
      *
      * @param another Another `Statistics` object whose data will be added
      *                to this object. If the passed `Statistics` object is
@@ -373,13 +386,9 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
             min = another.min;
             max = another.max;
             mean = another.mean;
-            sD = another.sD;
-            name = another.name;
-            unitId = another.unitId;
-            return;
-        }
-        if(another.count == 1) {
-            add(another.min);
+            sD = another.getSD();
+            m2 = another.m2();
+            sDStale = false;
             name = another.name;
             unitId = another.unitId;
             return;
@@ -390,12 +399,12 @@ public abstract class Statistics<P extends PeriodType> extends StoredObject impl
         if(another.max > max) {
             max = another.max;
         }
-        double ss = ss() + another.ss();
-        ss  += ((another.sD * another.sD) + (another.mean * another.mean)) * another.count;
-        mean = ((mean * count) + (another.mean * another.count));
-        count += another.count;
-        mean /= count;
-        sD = Math.sqrt((ss / count));
+        double m2 = m2(), delta = another.mean - mean;
+        int n = count + another.count;
+        mean += delta * another.count / n;
+        this.m2 = m2 + another.m2() + delta * delta * ((double) count * another.count / n);
+        count = n;
+        sDStale = true;
     }
 
     /**
@@ -0,0 +1,251 @@
+package com.storedobject.iot;
+
+import com.storedobject.common.StringList;
+import com.storedobject.core.Query;
+import com.storedobject.core.QueryBuilder;
+import com.storedobject.core.TransactionManager;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming roll-up of the IoT statistics. Instead of re-scanning the data tables hour by hour (as
+ * {@link Unit#computeStatistics(TransactionManager)} does), the data collection process may feed each {@link Data}
+ * instance to {@link #add(Data)} as soon as it is saved. Running accumulators are maintained per unit and statistics
+ * name, and when an hour is over, the hourly statistics is saved and rolled up into the daily, weekly, monthly and
+ * yearly statistics.
+ * <p>The roll-up runs only while it is started with a system {@link TransactionManager} (the data collector does
+ * this, see {@link #start(TransactionManager)}). Every {@link Data} instance saved is then fed to {@link #add(Data)}
+ * once its transaction is committed, and the hours that are over are flushed every minute using that
+ * {@link TransactionManager}. The unit and the statistics variables are resolved once per data class and unit.</p>
+ * <p>An accumulator starts only when the already-computed statistics of the unit are caught up with the current hour.
+ * Otherwise, the computation is left to the normal batch process. Data received late (for an hour that is already
+ * over) is merged into the saved statistics of that hour if it exists, otherwise, it is left to the normal batch
+ * process.</p>
+ *
+ * @author Syam
+ */
+public final class StatisticsRollup {
+
+    private static final Map<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+    private static final Map<String, List<Variable>> variables = new ConcurrentHashMap<>();
+    private static final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private static volatile TransactionManager tm;
+    private static ScheduledExecutorService flusher;
+
+    private StatisticsRollup() {
+    }
+
+    /**
+     * Start the roll-up. The hours that are over are flushed every minute from then on.
+     *
+     * @param systemTM System transaction manager to be used for saving the statistics.
+     */
+    public static synchronized void start(TransactionManager systemTM) {
+        tm = systemTM;
+        if(flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "IoT Statistics");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleAtFixedRate(StatisticsRollup::flush, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Flush the running statistics and stop the roll-up. (Data saved after this is left to the batch process).
+     */
+    public static synchronized void stop() {
+        flush();
+        if(flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        tm = null;
+    }
+
+    /**
+     * Add the values of a data instance to the running statistics. Nothing is done if the roll-up is not started.
+     *
+     * @param data Data instance (typically, just saved).
+     */
+    public static void add(Data data) {
+        TransactionManager tm = StatisticsRollup.tm;
+        if(tm == null) {
+            return;
+        }
+        Source source = sources.computeIfAbsent(data.getClass().getName() + "/" + data.getUnitId(),
+                k -> source(data));
+        for(Variable v: source.variables) {
+            double value;
+            try {
+                value = (double) v.getter.invokeExact((Object) data);
+            } catch(Throwable e) {
+                continue;
+            }
+            accumulators.computeIfAbsent(source.unit.getId() + "/" + v.name,
+                    k -> new Accumulator(source.unit, v.name, data.getClass())).add(tm, data.getCollectedAt(), value);
+        }
+    }
+
+    /**
+     * Save the running statistics of all the hours that are already over. This is invoked every minute while the
+     * roll-up is running so that the statistics of the units that stopped sending data are not held back.
+     */
+    public static void flush() {
+        TransactionManager tm = StatisticsRollup.tm;
+        if(tm == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        accumulators.values().forEach(a -> a.flush(tm, now));
+    }
+
+    /**
+     * Discard all the running statistics and the cached statistics definitions. (The discarded hours will be
+     * computed by the batch process).
+     */
+    public static void clear() {
+        accumulators.clear();
+        variables.clear();
+        sources.clear();
+    }
+
+    private static Source source(Data data) {
+        Unit unit = data.getUnit();
+        return unit == null ? new Source(null, List.of())
+                : new Source(unit, variables(data.getClass(), unit.getClass()));
+    }
+
+    private static List<Variable> variables(Class<? extends Data> dataClass, Class<? extends Unit> unitClass) {
+        return variables.computeIfAbsent(dataClass.getName() + "/" + unitClass.getName(), k -> {
+            List<Variable> list = new ArrayList<>();
+            UnitType ut = UnitType.getFor(unitClass.getName());
+            if(ut == null) {
+                return list;
+            }
+            Method m;
+            MethodType type = MethodType.methodType(double.class, Object.class);
+            for(String name: StringList.create(ut.getStatistics())) {
+                try {
+                    m = dataClass.getMethod("get" + name);
+                    if(Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers()) && (
+                            m.getReturnType() == double.class || m.getReturnType() == long.class ||
+                                    m.getReturnType() == int.class)) {
+                        list.add(new Variable(name, MethodHandles.publicLookup().unreflect(m).asType(type)));
+                    }
+                } catch (NoSuchMethodException | IllegalAccessException ignored) {
+                }
+            }
+            return list;
+        });
+    }
+
+    private record Source(Unit unit, List<Variable> variables) {
+    }
+
+    private record Variable(String name, MethodHandle getter) {
+    }
+
+    private static class Accumulator {
+
+        private final Unit unit;
+        private final String name;
+        private final Class<? extends Data> dataClass;
+        private AbstractUnit.DataPeriod period;
+        private HourlyStatistics hs;
+        private boolean caughtUp = false;
+
+        private Accumulator(Unit unit, String name, Class<? extends Data> dataClass) {
+            this.unit = unit;
+            this.name = name;
+            this.dataClass = dataClass;
+        }
+
+        synchronized void add(TransactionManager tm, long collectedAt, double value) {
+            if(period != null && collectedAt < period.from()) {
+                late(tm, collectedAt, value);
+                return;
+            }
+            if(period == null || collectedAt >= period.to()) {
+                if(hs != null) {
+                    save(tm);
+                }
+                period = unit.dataPeriod(new Date(collectedAt));
+                hs = start(collectedAt);
+            }
+            if(hs != null) {
+                hs.add(value);
+            }
+        }
+
+        synchronized void flush(TransactionManager tm, long now) {
+            if(hs != null && period.to() <= now) {
+                save(tm);
+            }
+        }
+
+        private void late(TransactionManager tm, long collectedAt, double value) {
+            try {
+                // If the hour is not yet computed, the batch process will pick up this value
+                unit.addLateValue(tm, name, unit.dataPeriod(new Date(collectedAt)).siteDate(), value);
+            } catch(Throwable e) {
+                tm.log(e);
+            }
+        }
+
+        private HourlyStatistics start(long collectedAt) {
+            try {
+                if(!caughtUp) {
+                    Date next = unit.nextStatisticsDate(name);
+                    if(next == null || unit.dataPeriod(next).from() != period.from()) {
+                        return null;
+                    }
+                }
+                HourlyStatistics hs = unit.newHourlyStatistics(name, period.siteDate());
+                if(hs == null) {
+                    return null;
+                }
+                // Values already received for this hour before the accumulator started
+                try(Query q = QueryBuilder.from(dataClass).columns(name)
+                        .where("Unit=? AND CollectedAt>=? AND CollectedAt<?", unit.getId(), period.from(), collectedAt)
+                        .query()) {
+                    for(ResultSet rs: q) {
+                        hs.add(rs.getDouble(1));
+                    }
+                }
+                return hs;
+            } catch(Throwable e) {
+                caughtUp = false;
+                return null;
+            }
+        }
+
+        private void save(TransactionManager tm) {
+            try {
+                if(hs.getCount() > 0) {
+                    unit.saveStatistics(tm, hs, period.siteDate());
+                }
+                caughtUp = true;
+            } catch(Throwable e) {
+                caughtUp = false; // Possibly, computed by the batch process already
+                tm.log(e);
+            }
+            hs = null;
+        }
+    }
+}
@@ -33,7 +33,7 @@ public abstract class SuperUnit extends Unit implements HasChildren {
     }
 
     @Override
-    final Double consumption(int resource, long from, long to) {
+    final Double consumption(int resource, long from, long to, ConsumptionBatch batch) {
         throw new SORuntimeException();
     }
 
@@ -9,6 +9,7 @@ import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -26,6 +27,7 @@ import java.util.Map;
  */
 public abstract class Unit extends AbstractUnit {
 
+    private static final int DELETE_CHUNK = 1000;
     private static final String[] ordinalityValues = new String[] {
             "1st",
             "2nd",
@@ -336,18 +338,19 @@ public abstract class Unit extends AbstractUnit {
      * @param resource the resource identifier for which consumption is calculated
      * @param from the start time (in milliseconds since epoch) of the period
      * @param to the end time (in milliseconds since epoch) of the period
+     * @param batch consumption values computed together for many units (could be null)
      * @return the total consumption as a Double, which is the sum of this unit's
      *         consumption and the consumptions of associated unit items, or null if no consumption was computed
      */
     @Override
-    Double consumption(int resource, long from, long to) {
-        Double c = computeConsumption(resource, from, to);
+    Double consumption(int resource, long from, long to, ConsumptionBatch batch) {
+        Double c = super.consumption(resource, from, to, batch);
         double value = 0;
         boolean foundAny = false;
         List<UnitItem> items = list(UnitItem.class, "Unit=" + getId() + " AND Active AND NOT Independent",
                 true).toList();
         for(UnitItem item: items) {
-            Double v = item.computeConsumption(resource, from, to);
+            Double v = batch == null ? item.computeConsumption(resource, from, to) : batch.consumption(item);
             if(v == null) {
                 continue;
             }
@@ -371,6 +374,10 @@ public abstract class Unit extends AbstractUnit {
      *                   statistics.
      */
     public void recomputeStatistics(TransactionManager tm) throws Exception {
+        if(isCompacted()) {
+            throw new SOException("Raw data of " + toDisplay()
+                    + " is already compacted, statistics can not be recomputed");
+        }
         tm.transact(t -> {
             for(Statistics<?> statistics: list(Statistics.class, "Unit=" + getId(), true)) {
                 statistics.delete(t);
@@ -396,6 +403,20 @@ public abstract class Unit extends AbstractUnit {
         if(names.isEmpty()) {
             return;
         }
+        List<Class<? extends Data>> dataClasses = dataClasses(ut);
+        if(dataClasses.isEmpty()) {
+            return;
+        }
+        for(String name: names) {
+            for (Class<? extends Data> dataClass : dataClasses) {
+                if(hasStatistics(dataClass, name)) {
+                    computeStatistics(tm, dataClass, name);
+                }
+            }
+        }
+    }
+
+    private static List<Class<? extends Data>> dataClasses(UnitType ut) {
         List<Class<? extends Data>> dataClasses = new ArrayList<>();
         list(UnitDefinition.class, "UnitType=" + ut.getId()).forEach(ud -> {
             Class<? extends Data> dataClass = ud.getDataClass();
@@ -403,23 +424,137 @@ public abstract class Unit extends AbstractUnit {
                 dataClasses.add(dataClass);
             }
         });
-        if(dataClasses.isEmpty()) {
-            return;
+        return dataClasses;
+    }
+
+    private static boolean hasStatistics(Class<? extends Data> dataClass, String name) {
+        try {
+            Method m = dataClass.getMethod("get" + name);
+            return Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers()) && (
+                    m.getReturnType() == double.class || m.getReturnType() == long.class ||
+                            m.getReturnType() == int.class);
+        } catch (NoSuchMethodException ignored) {
         }
-        Method m;
-        for(String name: names) {
-            for (Class<? extends Data> dataClass : dataClasses) {
-                try {
-                    m = dataClass.getMethod("get" + name);
-                    if(Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers()) && (
-                            m.getReturnType() == double.class || m.getReturnType() == long.class ||
-                                    m.getReturnType() == int.class)) {
-                        computeStatistics(tm, dataClass, name);
-                    }
-                } catch (NoSuchMethodException ignored) {
+        return false;
+    }
+
+    /**
+     * Compacts the raw data collected for this unit. The statistics are computed first and then the raw data
+     * collected before the given time is deleted, but only up to the hour for which all the statistics of the data
+     * class are already computed. Data classes without any statistics are not compacted. The last data record before
+     * the cut-off time is always retained so that the values at the cut-off time remain known.
+     * <p>Note: The consumption computed from the raw data must be computed up to the given time before invoking
+     * this (see {@link Block#compactData(TransactionManager)}).</p>
+     *
+     * @param tm Transaction manager.
+     * @param before Time (GMT) before which the raw data may be deleted.
+     * @return Number of data records deleted.
+     * @throws Exception If any error occurs while computing the statistics or deleting the data.
+     */
+    public long compactData(TransactionManager tm, long before) throws Exception {
+        UnitType ut = UnitType.getFor(getClass().getName());
+        if(ut == null) {
+            return 0;
+        }
+        computeStatistics(tm);
+        StringList names = StringList.create(ut.getStatistics());
+        long deleted = 0, cutoff;
+        boolean summarized;
+        Date next;
+        ResultSet rs;
+        for(Class<? extends Data> dataClass: dataClasses(ut)) {
+            cutoff = before;
+            summarized = false;
+            for(String name: names) {
+                if(!hasStatistics(dataClass, name)) {
+                    continue;
+                }
+                next = nextStatisticsDate(name);
+                if(next == null) { // Not yet summarized
+                    summarized = false;
+                    break;
+                }
+                summarized = true;
+                cutoff = Math.min(cutoff, next.getTime());
+            }
+            if(!summarized) {
+                continue;
+            }
+            try (Query q = query(dataClass, "/Max(CollectedAt)", "Unit=" + getId() + " AND CollectedAt<" + cutoff)) {
+                rs = q.getResultSet();
+                cutoff = rs.getLong(1);
+                if(rs.wasNull()) {
+                    continue;
+                }
+            }
+            deleted += deleteData(tm, dataClass, cutoff);
+        }
+        return deleted;
+    }
+
+    private long deleteData(TransactionManager tm, Class<? extends Data> dataClass, long before) throws Exception {
+        // Deleted through the objects (so that the delete logic of the data class is honoured), a chunk per
+        // transaction so that a long backlog doesn't hold a huge transaction
+        long deleted = 0;
+        List<? extends Data> chunk;
+        while(true) {
+            chunk = QueryBuilder.from(dataClass).where("Unit=? AND CollectedAt<?", getId(), before)
+                    .orderBy("CollectedAt").limit(DELETE_CHUNK).list().toList();
+            if(chunk.isEmpty()) {
+                return deleted;
+            }
+            List<? extends Data> objects = chunk;
+            tm.transact(t -> {
+                for(Data data: objects) {
+                    data.delete(t);
+                }
+            });
+            deleted += chunk.size();
+            if(chunk.size() < DELETE_CHUNK) {
+                return deleted;
+            }
+        }
+    }
+
+    /**
+     * Check whether the raw data of this unit was compacted (see {@link #compactData(TransactionManager, long)}),
+     * that is, whether there are statistics for a period for which the raw data is no more available.
+     *
+     * @return True if compacted.
+     * @throws SQLException If the database can not be queried.
+     */
+    public boolean isCompacted() throws SQLException {
+        ResultSet rs;
+        int y, h;
+        String condition = "Unit=" + getId();
+        try (Query q = query(HourlyStatistics.class, "/Min(Year)", condition)) {
+            rs = q.getResultSet();
+            y = rs.getInt(1);
+            if(rs.wasNull()) {
+                return false;
+            }
+        }
+        try (Query q = query(HourlyStatistics.class, "/Min(Hour)", condition + " AND Year=" + y)) {
+            rs = q.getResultSet();
+            h = rs.getInt(1);
+        }
+        Date firstHour = DateUtility.create(y, 1, 1); // Site date
+        firstHour = getSite().dateGMT(new Date(firstHour.getTime() + ((h - 1) * 3600000L))); // To GMT
+        UnitType ut = UnitType.getFor(getClass().getName());
+        if(ut == null) {
+            return false;
+        }
+        long first = Long.MAX_VALUE;
+        for(Class<? extends Data> dataClass: dataClasses(ut)) {
+            try (Query q = query(dataClass, "/Min(CollectedAt)", condition)) {
+                rs = q.getResultSet();
+                long f = rs.getLong(1);
+                if(!rs.wasNull()) {
+                    first = Math.min(first, f);
                 }
             }
         }
+        return firstHour.getTime() + 3600000L <= first;
     }
 
     private void computeStatistics(TransactionManager tm, Class<? extends Data> dataClass, String name)
@@ -433,17 +568,8 @@ public abstract class Unit extends AbstractUnit {
     private int statistics(TransactionManager tm, Class<? extends Data> dataClass, String name)
             throws Exception {
         ResultSet rs;
-        int y, h;
-        Date dateGMT;
-        String condition = "Unit=" + getId() + " AND Name='" + name + "'";
-        try (Query q = query(HourlyStatistics.class, "/Max(Year)", condition)) {
-            rs = q.getResultSet();
-            y = rs.getInt(1);
-            if(rs.wasNull()) {
-                y = -1;
-            }
-        }
-        if(y == -1) { // Never computed
+        Date dateGMT = nextStatisticsDate(name);
+        if(dateGMT == null) { // Never computed
             long first;
             try (Query q = query(dataClass, "/Min(CollectedAt)", "Unit=" + getId())) {
                 rs = q.getResultSet();
@@ -453,14 +579,6 @@ public abstract class Unit extends AbstractUnit {
                 }
                 dateGMT = new Date(first);
             }
-        } else {
-            try (Query q = query(HourlyStatistics.class, "/Max(Hour)", condition + " AND Year=" + y)) {
-                rs = q.getResultSet();
-                h = rs.getInt(1);
-                dateGMT = DateUtility.create(y, 1, 1); // Site date
-                dateGMT = new Date(dateGMT.getTime() + (h * 3600000L)); // Hour offset + 1 hour
-                dateGMT = getSite().dateGMT(dateGMT); // To GMT
-            }
         }
         int result;
         while ((result = statistics(tm, dataClass, dateGMT, name)) == -2) { // Data gap?
@@ -469,14 +587,40 @@ public abstract class Unit extends AbstractUnit {
         return result;
     }
 
+    /**
+     * Get the time (GMT) of the hour for which the hourly statistics is to be computed next.
+     *
+     * @param name Name of the statistics.
+     * @return Time of the next hour (GMT) or null if the statistics was never computed.
+     * @throws SQLException If the database can not be queried.
+     */
+    Date nextStatisticsDate(String name) throws SQLException {
+        ResultSet rs;
+        int y, h;
+        Date dateGMT;
+        String condition = "Unit=" + getId() + " AND Name='" + name + "'";
+        try (Query q = query(HourlyStatistics.class, "/Max(Year)", condition)) {
+            rs = q.getResultSet();
+            y = rs.getInt(1);
+            if(rs.wasNull()) {
+                return null;
+            }
+        }
+        try (Query q = query(HourlyStatistics.class, "/Max(Hour)", condition + " AND Year=" + y)) {
+            rs = q.getResultSet();
+            h = rs.getInt(1);
+            dateGMT = DateUtility.create(y, 1, 1); // Site date
+            dateGMT = new Date(dateGMT.getTime() + (h * 3600000L)); // Hour offset + 1 hour
+            return getSite().dateGMT(dateGMT); // To GMT
+        }
+    }
+
     private int statistics(TransactionManager tm, Class<? extends Data> dataClass, Date dateGMT, String name)
             throws Exception {
         DataPeriod dataPeriod = getDataPeriod(dateGMT);
         if(dataPeriod == null) {
             return -1;
         }
-        Date siteDate = dataPeriod.siteDate();
-        List<Statistics<?>> statisticsList = new ArrayList<>();
         HourlyStatistics hs = createHourlyStatistics(name, dataPeriod.siteDate());
         if(!hs.isVirtual()) {
             return -1;
@@ -491,15 +635,60 @@ public abstract class Unit extends AbstractUnit {
         if(hs.getCount() == 0) {
             return -2; // Data gap?
         }
-        statisticsList.add(hs);
+        saveStatistics(tm, hs, dataPeriod.siteDate());
+        return 1;
+    }
+
+    /**
+     * Save the hourly statistics computed and roll it up into the daily, weekly, monthly and yearly statistics.
+     *
+     * @param tm Transaction manager.
+     * @param hs Hourly statistics computed.
+     * @param siteDate Site date of the hour.
+     * @throws Exception If the statistics can not be saved.
+     */
+    void saveStatistics(TransactionManager tm, HourlyStatistics hs, Date siteDate) throws Exception {
+        saveStatistics(tm, hs, hs, siteDate);
+    }
+
+    /**
+     * Add a value that arrived after the hourly statistics of its hour was already saved. The value is merged into
+     * the hourly statistics and rolled up into the daily, weekly, monthly and yearly statistics.
+     *
+     * @param tm Transaction manager.
+     * @param name Name of the statistics.
+     * @param siteDate Site date of the hour.
+     * @param value Value to add.
+     * @return True if the value is added. False if the statistics of the hour is not yet computed (so that the
+     * value will be picked up when it is computed).
+     * @throws Exception If the statistics can not be saved.
+     */
+    boolean addLateValue(TransactionManager tm, String name, Date siteDate, double value) throws Exception {
+        HourlyStatistics hs = createHourlyStatistics(name, siteDate);
+        if(hs.isVirtual()) {
+            return false;
+        }
+        HourlyStatistics late = new HourlyStatistics();
+        late.setUnit(this);
+        late.setName(name);
+        late.add(value);
+        hs.add(value);
+        saveStatistics(tm, hs, late, siteDate);
+        return true;
+    }
+
+    private void saveStatistics(TransactionManager tm, HourlyStatistics hs, HourlyStatistics rollUp, Date siteDate)
+            throws Exception {
+        String name = hs.getName();
+        List<Statistics<?>> statisticsList = new ArrayList<>();
         DailyStatistics ds = createDailyStatistics(name, siteDate);
-        ds.add(hs);
+        ds.add(rollUp);
         WeeklyStatistics ws = createWeeklyStatistics(name, siteDate);
-        ws.add(hs);
+        ws.add(rollUp);
         MonthlyStatistics ms = createMonthlyStatistics(name, siteDate);
-        ms.add(hs);
+        ms.add(rollUp);
         YearlyStatistics ys = createYearlyStatistics(name, siteDate);
-        ys.add(hs);
+        ys.add(rollUp);
         statisticsList.add(hs);
         statisticsList.add(ds);
         statisticsList.add(ws);
@@ -513,7 +702,18 @@ public abstract class Unit extends AbstractUnit {
                 c.save(t);
             }
         });
-        return 1;
+    }
+
+    /**
+     * Create the hourly statistics instance for the given hour if it is not yet computed.
+     *
+     * @param name Name of the statistics.
+     * @param siteDate Site date of the hour.
+     * @return A new (virtual) instance or null if the statistics for the hour already exists.
+     */
+    HourlyStatistics newHourlyStatistics(String name, Date siteDate) {
+        HourlyStatistics hs = createHourlyStatistics(name, siteDate);
+        return hs.isVirtual() ? hs : null;
     }
 
     private <T extends Statistics<?>> T getStatistics(String name, Class<T> cClass, String condition, String orderBy) {
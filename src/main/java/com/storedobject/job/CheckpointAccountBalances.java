@@ -0,0 +1,39 @@
+package com.storedobject.job;
+
+import com.storedobject.core.*;
+
+import java.sql.Date;
+
+/**
+ * Scheduler job to create the month-end balance checkpoints of all the accounts and to compact the older daily
+ * balance snapshots. (Should be scheduled to run once a month, after the month-end).
+ * <p>The daily snapshots of the last few months are retained. The number of months can be set via the global
+ * property "ACCOUNT-BALANCE-MONTHS" (default is 3).</p>
+ *
+ * @author Syam
+ */
+public class CheckpointAccountBalances extends Job {
+
+    /**
+     * Constructor.
+     *
+     * @param schedule Schedule defined for this Job.
+     */
+    public CheckpointAccountBalances(Schedule schedule) {
+        super(schedule);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        TransactionManager tm = getTransactionManager();
+        Date date = DateUtility.endOfMonth(-1);
+        log("Balance checkpoints created as of " + DateUtility.format(date) + ": "
+                + Account.checkpointBalances(tm, date));
+        int months = GlobalProperty.getInteger(tm, "ACCOUNT-BALANCE-MONTHS");
+        if(months <= 0) {
+            months = 3;
+        }
+        log("Balance snapshots compacted: " + Account.compactBalances(tm,
+                DateUtility.addMonth(DateUtility.startOfMonth(), -months)));
+    }
+}
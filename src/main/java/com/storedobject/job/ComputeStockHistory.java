@@ -3,16 +3,24 @@ package com.storedobject.job;
 import com.storedobject.core.*;
 
 import java.sql.Date;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Scheduler job to compute stock history for all locations.
+ * <p>Locations are computed in parallel by a bounded pool of threads (each location in its own transactions). The
+ * number of threads can be set via the global property "STOCK-HISTORY-THREADS" (default is 4). The completion of
+ * each location is recorded in {@link StockHistoryDate}, so if a run fails, the next run resumes from the locations
+ * that are not yet computed.</p>
  *
  * @author Syam
  */
 public class ComputeStockHistory extends Job {
 
+    private static final int PAGE_SIZE = 500;
+
     /**
      * Constructor.
      *
@@ -34,45 +42,70 @@ public class ComputeStockHistory extends Job {
         if(StockHistoryDate.isComputed(date, Id.ZERO)) {
             return true;
         }
-        boolean ok = compute(tm, date, QueryBuilder.from(InventoryStoreBin.class));
-        ok = ok && compute(tm, date, QueryBuilder.from(InventoryFitmentPosition.class));
-        ok = ok && compute(tm, date, QueryBuilder.from(InventoryCustodyLocation.class));
-        ok = ok && compute(tm, date, QueryBuilder.from(InventoryVirtualLocation.class));
-        if(ok) {
-            StockHistoryDate d = new StockHistoryDate();
-            d.setDate(date);
-            d.setLocation(Id.ZERO);
-            try {
-                tm.transact(d::save);
-            } catch (Exception e) {
-                tm.log(e);
-                return false;
-            }
+        Set<Id> computed = new HashSet<>();
+        StoredObject.list(StockHistoryDate.class, "Date='" + Database.format(date) + "'")
+                .forEach(d -> computed.add(d.getLocationId()));
+        int threads = GlobalProperty.getInteger(tm, "STOCK-HISTORY-THREADS");
+        if(threads <= 0) {
+            threads = 4;
+        }
+        int failed;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            failed = compute(tm, date, InventoryStoreBin.class, computed, executor);
+            failed += compute(tm, date, InventoryFitmentPosition.class, computed, executor);
+            failed += compute(tm, date, InventoryCustodyLocation.class, computed, executor);
+            failed += compute(tm, date, InventoryVirtualLocation.class, computed, executor);
+        }
+        if(failed > 0) {
+            tm.log("Stock history computation failed for " + failed + " location(s), will be resumed in the next run");
+            return false;
+        }
+        StockHistoryDate d = new StockHistoryDate();
+        d.setDate(date);
+        d.setLocation(Id.ZERO);
+        try {
+            StockHistoryDate.removeZeroStocks(tm, date);
+            tm.transact(d::save);
+        } catch (Exception e) {
+            tm.log(e);
+            return false;
         }
-        return ok;
+        return true;
     }
 
-    private static boolean compute(TransactionManager tm, Date date, QueryBuilder<? extends InventoryLocation> locationQueryBuilder) {
-        locationQueryBuilder.limit(100);
+    private static int compute(TransactionManager tm, Date date, Class<? extends InventoryLocation> locationClass,
+                               Set<Id> computed, ExecutorService executor) {
+        KeysetPager<? extends InventoryLocation> pager = QueryBuilder.from(locationClass).orderBy("Id")
+                .pager(PAGE_SIZE);
         List<InventoryLocation> locations = new ArrayList<>();
-        locationQueryBuilder.list().map(InventoryLocation.class::cast).collectAll(locations);
-        boolean ok = true;
-        while (!locations.isEmpty()) {
+        List<Future<Boolean>> results = new ArrayList<>();
+        int failed = 0;
+        while (pager.hasMore()) {
+            locations.addAll(pager.nextPage());
             for (InventoryLocation location : locations) {
-                ok = ok && compute(tm, date, location);
+                if(!computed.contains(location.getId())) {
+                    results.add(executor.submit(() -> compute(tm, date, location)));
+                }
             }
-            if(locations.size() < 100) {
-                locations.clear();
-                break;
+            for(Future<Boolean> result: results) { // Wait for the page to complete before loading the next one
+                try {
+                    if(!result.get()) {
+                        ++failed;
+                    }
+                } catch (Exception e) {
+                    tm.log(e);
+                    ++failed;
+                }
             }
+            results.clear();
             locations.clear();
         }
-        return ok;
+        return failed;
     }
 
     private static boolean compute(TransactionManager tm, Date date, InventoryLocation location) {
         try {
-            StockHistoryDate.compute(tm, date, location);
+            StockHistoryDate.compute(tm, date, location, false);
             return true;
         } catch (Exception e) {
             tm.log(e);
@@ -12,6 +12,21 @@ import com.storedobject.core.*;
  */
 public abstract class Job {
 
+	/**
+	 * What to do when a Job is due while its earlier executions are still running (and the concurrency limit is
+	 * reached).
+	 */
+	public enum Overlap {
+		/**
+		 * Skip this execution.
+		 */
+		SKIP,
+		/**
+		 * Run it once after the running execution is over. (Multiple due executions are coalesced into one).
+		 */
+		QUEUE
+	}
+
 	final Schedule schedule;
 
 	/**
@@ -82,6 +97,46 @@ public abstract class Job {
 	public void alert(Object... messageParameters) {
 	}
 
+	/**
+	 * Get the maximum number of executions of this Job that may run at the same time.
+	 * (The default implementation returns 1).
+	 *
+	 * @return Concurrency limit.
+	 */
+	public int getMaxConcurrency() {
+		return 1;
+	}
+
+	/**
+	 * Get the overlap policy of this Job. See {@link Overlap}. (The default implementation returns
+	 * {@link Overlap#SKIP}).
+	 *
+	 * @return Overlap policy.
+	 */
+	public Overlap getOverlapPolicy() {
+		return Overlap.SKIP;
+	}
+
+	/**
+	 * Get the spread (in seconds) for starting this Job. The start of each execution is delayed by a random
+	 * duration within this spread so that the Jobs scheduled at the same minute do not hit the database together.
+	 * (The default implementation returns the value of the global property JOB-SPREAD, or 0 if not defined).
+	 *
+	 * @return Spread in seconds.
+	 */
+	public int getSpread() {
+		return Math.max(0, GlobalProperty.getInteger(getTransactionManager(), "JOB-SPREAD"));
+	}
+
+	/**
+	 * Get the execution metrics of this Job's class.
+	 *
+	 * @return Execution metrics.
+	 */
+	public JobMetrics getMetrics() {
+		return JobExecutor.getMetrics(getClass());
+	}
+
 	/**
 	 * Get current status information if any.
 	 * @return Current status information to display in the log.
@@ -0,0 +1,172 @@
+package com.storedobject.job;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Central executor for the {@link Job}s. Every execution runs on its own virtual thread, so that a long-running
+ * {@link Job} (or a {@link DaemonJob} that runs forever) does not hold up the others. The concurrency limit
+ * ({@link Job#getMaxConcurrency()}), overlap policy ({@link Job#getOverlapPolicy()}) and start spread
+ * ({@link Job#getSpread()}) of each {@link Job} are honoured, and execution metrics are maintained per job class
+ * (see {@link JobMetrics}).
+ *
+ * @author Syam
+ */
+public final class JobExecutor {
+
+    private static final Map<Class<? extends Job>, JobMetrics> metrics = new ConcurrentHashMap<>();
+    private static final Map<Job, State> states = new ConcurrentHashMap<>();
+    private static volatile ExecutorService executor = create();
+
+    private JobExecutor() {
+    }
+
+    private static ExecutorService create() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("SO Job-", 0).factory());
+    }
+
+    /**
+     * Submit a {@link Job} for execution because it is due now.
+     *
+     * @param job Job to execute.
+     * @return True if the execution is started or queued. False if it is skipped because the concurrency limit of
+     * the Job is already reached.
+     */
+    public static boolean submit(Job job) {
+        JobMetrics m = getMetrics(job.getClass());
+        State s = states.computeIfAbsent(job, k -> new State());
+        synchronized(s) {
+            if(s.running >= Math.max(1, job.getMaxConcurrency())) {
+                if(job.getOverlapPolicy() == Job.Overlap.QUEUE && !s.pending) {
+                    s.pending = true;
+                    m.queued();
+                    return true;
+                }
+                m.skipped();
+                return false;
+            }
+            ++s.running;
+        }
+        m.queued();
+        executor.execute(() -> run(job, s, m));
+        return true;
+    }
+
+    private static void run(Job job, State s, JobMetrics m) {
+        int spread = 0;
+        try {
+            spread = job.getSpread();
+        } catch(Throwable ignored) {
+        }
+        if(spread > 0) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(spread * 1000L));
+            } catch(InterruptedException e) {
+                synchronized(s) {
+                    --s.running;
+                    if(s.pending) {
+                        s.pending = false;
+                        m.dropped();
+                    }
+                }
+                m.dropped();
+                return;
+            }
+        }
+        boolean again;
+        do {
+            m.started();
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                job.execute();
+            } catch(Throwable e) {
+                failed = true;
+                job.log(e);
+            }
+            if(failed || !(job instanceof DaemonJob)) {
+                try {
+                    job.clean();
+                } catch(Throwable e) {
+                    job.log(e);
+                }
+            }
+            m.completed((System.nanoTime() - start) / 1000000L, failed);
+            synchronized(s) {
+                again = s.pending;
+                s.pending = false;
+                if(!again) {
+                    --s.running;
+                }
+            }
+        } while(again);
+    }
+
+    /**
+     * Get the execution metrics of a job class.
+     *
+     * @param jobClass Job class.
+     * @return Execution metrics.
+     */
+    public static JobMetrics getMetrics(Class<? extends Job> jobClass) {
+        return metrics.computeIfAbsent(jobClass, JobMetrics::new);
+    }
+
+    /**
+     * Get the execution metrics of all the job classes executed so far.
+     *
+     * @return Execution metrics, ordered by the total run-time (longest first).
+     */
+    public static List<JobMetrics> getMetrics() {
+        List<JobMetrics> list = new ArrayList<>(metrics.values());
+        list.sort(Comparator.comparingLong((JobMetrics m) -> m.getAverageTime() * m.getRuns()).reversed());
+        return list;
+    }
+
+    /**
+     * Get the status of the executor as a JSON string (one entry per job class).
+     *
+     * @return Status.
+     */
+    public static String getStatus() {
+        StringBuilder s = new StringBuilder("{\"jobs\":[");
+        List<JobMetrics> list = getMetrics();
+        for(int i = 0; i < list.size(); i++) {
+            if(i > 0) {
+                s.append(',');
+            }
+            s.append('"').append(list.get(i).toString().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return s.append("]}").toString();
+    }
+
+    /**
+     * Interrupt all the running executions. The {@link Job#shutdown()} method of every job submitted so far is
+     * invoked before that. (Executions submitted after this will run on a fresh executor).
+     */
+    public static void shutdown() {
+        states.keySet().forEach(job -> {
+            try {
+                job.shutdown();
+            } catch(Throwable e) {
+                job.log(e);
+            }
+        });
+        ExecutorService e = executor;
+        executor = create();
+        e.shutdownNow();
+        states.clear();
+    }
+
+    private static class State {
+
+        private int running;
+        private boolean pending;
+    }
+}
@@ -0,0 +1,181 @@
+package com.storedobject.job;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution metrics of a {@link Job} class. The run-time of each execution is recorded in a histogram so that the
+ * jobs that run long (and probably saturate the database) can be identified.
+ *
+ * @author Syam
+ */
+public final class JobMetrics {
+
+    private static final long[] BUCKETS = { 100, 1000, 10000, 60000, 600000, 3600000 };
+    private static final String[] BUCKET_LABELS = { "<100ms", "<1s", "<10s", "<1m", "<10m", "<1h", ">=1h" };
+    private final Class<? extends Job> jobClass;
+    private final AtomicLong runs = new AtomicLong(), failures = new AtomicLong(), skipped = new AtomicLong(),
+            totalTime = new AtomicLong(), maxTime = new AtomicLong(), lastTime = new AtomicLong(),
+            lastStarted = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger(), queued = new AtomicInteger();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+    JobMetrics(Class<? extends Job> jobClass) {
+        this.jobClass = jobClass;
+    }
+
+    void queued() {
+        queued.incrementAndGet();
+    }
+
+    void dropped() {
+        queued.decrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void started() {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        lastStarted.set(System.currentTimeMillis());
+    }
+
+    void completed(long millis, boolean failed) {
+        running.decrementAndGet();
+        runs.incrementAndGet();
+        if(failed) {
+            failures.incrementAndGet();
+        }
+        totalTime.addAndGet(millis);
+        maxTime.accumulateAndGet(millis, Math::max);
+        lastTime.set(millis);
+        int i = 0;
+        while(i < BUCKETS.length && millis >= BUCKETS[i]) {
+            ++i;
+        }
+        histogram.incrementAndGet(i);
+    }
+
+    /**
+     * Get the job class.
+     *
+     * @return Job class.
+     */
+    public Class<? extends Job> getJobClass() {
+        return jobClass;
+    }
+
+    /**
+     * Get the number of executions completed.
+     *
+     * @return Number of runs.
+     */
+    public long getRuns() {
+        return runs.get();
+    }
+
+    /**
+     * Get the number of executions that ended with an error.
+     *
+     * @return Number of failures.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Get the number of executions skipped because the previous execution was still running.
+     *
+     * @return Number of skipped executions.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Get the number of executions currently running.
+     *
+     * @return Number of running executions.
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Get the number of executions waiting to start.
+     *
+     * @return Queue depth.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Get the average run-time.
+     *
+     * @return Average run-time in milliseconds.
+     */
+    public long getAverageTime() {
+        long n = runs.get();
+        return n == 0 ? 0 : totalTime.get() / n;
+    }
+
+    /**
+     * Get the maximum run-time.
+     *
+     * @return Maximum run-time in milliseconds.
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Get the run-time of the last execution.
+     *
+     * @return Run-time in milliseconds.
+     */
+    public long getLastTime() {
+        return lastTime.get();
+    }
+
+    /**
+     * Get the time at which the last execution was started.
+     *
+     * @return Time in milliseconds (0 if never started).
+     */
+    public long getLastStarted() {
+        return lastStarted.get();
+    }
+
+    /**
+     * Get the run-time histogram. Bucket boundaries are 100ms, 1s, 10s, 1m, 10m and 1h.
+     *
+     * @return Number of executions in each bucket.
+     */
+    public long[] getHistogram() {
+        long[] h = new long[histogram.length()];
+        for(int i = 0; i < h.length; i++) {
+            h[i] = histogram.get(i);
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(jobClass.getName());
+        s.append(": Runs = ").append(runs.get()).append(", Failures = ").append(failures.get())
+                .append(", Skipped = ").append(skipped.get()).append(", Running = ").append(running.get())
+                .append(", Queued = ").append(queued.get()).append(", Average = ").append(getAverageTime())
+                .append("ms, Max = ").append(maxTime.get()).append("ms [");
+        for(int i = 0; i < histogram.length(); i++) {
+            if(i > 0) {
+                s.append(", ");
+            }
+            s.append(BUCKET_LABELS[i]).append(": ").append(histogram.get(i));
+        }
+        return s.append(']').toString();
+    }
+}
@@ -8,9 +8,16 @@ import com.storedobject.core.annotation.Column;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class MessageGroup extends StoredObject implements RequiresApproval{
 
+    // Resolved members are cached because alerts may be sent to the same group in bursts. The entry of a group is
+    // invalidated when the group (and thus, its links) is saved. Changes in the system user groups and escalation
+    // groups are picked up when the entry expires.
+    private static final long MEMBERS_EXPIRY = 5 * 60000L;
+    private static final Map<Id, Members> membersCache = new ConcurrentHashMap<>();
     private String name;
     private Id templateId;
 
@@ -90,6 +97,25 @@ public final class MessageGroup extends StoredObject implements RequiresApproval
         return get(MessageTemplate.class, templateId);
     }
 
+    @Override
+    public void saved() throws Exception {
+        super.saved();
+        Id id = getId();
+        Transaction transaction = getTransaction();
+        if(transaction == null) {
+            membersCache.remove(id);
+        } else {
+            transaction.addCommitListener(t -> membersCache.remove(id));
+        }
+    }
+
+    /**
+     * Clear the cached members of all message groups.
+     */
+    public static void clearCache() {
+        membersCache.clear();
+    }
+
     @Override
     public void validateData(TransactionManager tm) throws Exception {
         if(StringUtility.isWhite(name)) {
@@ -131,56 +157,29 @@ public final class MessageGroup extends StoredObject implements RequiresApproval
     }
 
     private void escalate(List<Id> messageIds, TransactionControl tc) {
-        ArrayList<LoginMessage> ms = new ArrayList<>();
-        LoginMessage m;
-        for(Id id: messageIds) {
-            m = get(LoginMessage.class, id);
-            if(m != null) {
-                ms.add(m);
-            }
-        }
-        if(!ms.isEmpty()) {
-            escalate(ms, tc);
+        List<Escalation> escalations = members().escalations;
+        if(messageIds.isEmpty() || escalations.isEmpty()) {
+            return;
         }
-    }
-
-    private void escalate(ArrayList<LoginMessage> messages, TransactionControl tc) {
-        ArrayList<LoginMessage> created = new ArrayList<>();
-        ObjectIterator<Person> persons = null;
-        try(ObjectIterator<MessageEscalation> list = listLinks(MessageEscalation.class, "Days>0", "Days")) {
-            int days = 0;
-            for(MessageEscalation me: list) {
-                if(days == 0) {
-                    persons = me.getEscalateTo().listMembers();
-                    days = me.getDays();
-                } else if(days == me.getDays()) {
-                    persons.add(me.getEscalateTo().listMembers());
-                } else {
-                    escalate(messages, persons, tc, days, created);
-                    days = 0;
-                    messages = created;
-                    created = new ArrayList<>();
-                }
-            }
-            if(days> 0) {
-                escalate(messages, persons, tc, days, created);
+        StringBuilder c = new StringBuilder("Id IN (");
+        for(int i = 0; i < messageIds.size(); i++) {
+            if(i > 0) {
+                c.append(',');
             }
+            c.append(messageIds.get(i));
         }
-        if(persons != null) {
-            persons.close();
-        }
-    }
-
-    private void escalate(ArrayList<LoginMessage> messages, ObjectIterator<Person> persons, TransactionControl tc,
-                          int days, ArrayList<LoginMessage> collect) {
+        List<LoginMessage> messages = list(LoginMessage.class, c.append(')').toString()).toList();
         LoginMessage nm;
-        for(LoginMessage m: messages) {
-            nm = m.escalate(tc, persons, days);
-            persons.close();
-            if(nm == null) {
-                return;
+        for(Escalation e: escalations) {
+            List<LoginMessage> created = new ArrayList<>();
+            for(LoginMessage m: messages) {
+                nm = m.escalate(tc, e.persons, e.days);
+                if(nm == null) {
+                    return;
+                }
+                created.add(nm);
             }
-            collect.add(nm);
+            messages = created;
         }
     }
 
@@ -193,13 +192,40 @@ public final class MessageGroup extends StoredObject implements RequiresApproval
         if(person != null) {
             m.add(person);
         }
+        m.addAll(members().persons);
+        return ObjectIterator.create(m);
+    }
+
+    private Members members() {
+        Members m = membersCache.get(getId());
+        if(m == null || (System.currentTimeMillis() - m.loadedAt) > MEMBERS_EXPIRY) {
+            m = loadMembers();
+            membersCache.put(getId(), m);
+        }
+        return m;
+    }
+
+    private Members loadMembers() {
+        ArrayListSet<Person> m = new ArrayListSet<>();
         listLinks(Person.class).collectAll(m);
         for(SystemUserGroup g: listLinks(SystemUserGroup.class)) {
             for(SystemUser su: g.listUsers()) {
                 m.add(su.getPerson());
             }
         }
-        return ObjectIterator.create(m);
+        // Escalation levels, persons of the entries with the same number of days are merged
+        List<Escalation> escalations = new ArrayList<>();
+        try(ObjectIterator<MessageEscalation> list = listLinks(MessageEscalation.class, "Days>0", "Days")) {
+            Escalation e = null;
+            for(MessageEscalation me: list) {
+                if(e == null || e.days != me.getDays()) {
+                    e = new Escalation(me.getDays(), new ArrayListSet<>());
+                    escalations.add(e);
+                }
+                me.getEscalateTo().listMembers().collectAll(e.persons);
+            }
+        }
+        return new Members(m, escalations, new ConcurrentHashMap<>(), System.currentTimeMillis());
     }
 
     /**
@@ -210,12 +236,22 @@ public final class MessageGroup extends StoredObject implements RequiresApproval
      * @return List.
      */
     public <P extends PersonRole> List<Contact> listContacts(int contactType) {
+        Members members = members();
+        List<Contact> contacts = members.contacts.get(contactType);
+        if(contacts == null) {
+            contacts = loadContacts(members, contactType);
+            members.contacts.put(contactType, contacts);
+        }
+        return new ArrayList<>(contacts);
+    }
+
+    private <P extends PersonRole> List<Contact> loadContacts(Members members, int contactType) {
         List<MessageTemplate> templates = getTemplate().listAll(contactType);
         ArrayListSet<Contact> list = new ArrayListSet<>();
         if(templates.isEmpty()) {
             return list;
         }
-        listMembers().forEach(p -> {
+        members.persons.forEach(p -> {
             for(MessageTemplate mt: templates) {
                 ContactType ct = mt.getContactType();
                 Class<? extends HasContacts> contactClass = mt.getContactType().getContactClass();
@@ -376,6 +412,13 @@ public final class MessageGroup extends StoredObject implements RequiresApproval
         }
     }
 
+    private record Members(List<Person> persons, List<Escalation> escalations, Map<Integer, List<Contact>> contacts,
+                           long loadedAt) {
+    }
+
+    private record Escalation(int days, List<Person> persons) {
+    }
+
     @Override
     public String toString() {
         MessageTemplate mt = getTemplate();
@@ -1,6 +1,7 @@
 package com.storedobject.job;
 
 import com.storedobject.common.SORuntimeException;
+import com.storedobject.core.Id;
 import com.storedobject.core.Message;
 import com.storedobject.core.StoredObject;
 import com.storedobject.core.StringUtility;
@@ -8,10 +9,14 @@ import com.storedobject.core.TransactionManager;
 import com.storedobject.sms.SMSMessage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Message sender.
  * <p>Note: All message senders (SMS, Email, Telegram etc.) must extend this class.</p>
+ * <p>Each sender has a single dispatcher (virtual) thread that wakes up as soon as new messages are committed (see
+ * {@link #kick(Class)}). Any number of kicks received while the dispatcher is busy are coalesced into one more round.
+ * The dispatcher also wakes up every 5 minutes to pick up messages created elsewhere or to retry.</p>
  *
  * @param <T> Type of message.
  *
@@ -19,11 +24,13 @@ import java.util.*;
  */
 public abstract class MessageSender<T extends Message> extends DaemonJob {
 
-    private static final Set<MessageSender<?>> senders = new HashSet<>();
+    private static final int POLL_INTERVAL = 300000;
+    private static final Set<MessageSender<?>> senders = ConcurrentHashMap.newKeySet();
     private final Class<T> messageClass;
-    private final Object lock = new Object();
-    private byte stage = 0;
-    private Timer timer;
+    private final Object lock = new Object(), signal = new Object();
+    private volatile byte stage = 0;
+    private boolean pending = true;
+    private Thread dispatcher;
     private static MessageGroup mg;
 
     /**
@@ -74,25 +81,60 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
             case 0 -> {
                 stage = 1;
                 initialize();
-                timer = new Timer();
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        send();
-                    }
-                }, 0, 300000);
+                dispatcher = Thread.ofVirtual().name(getClass().getSimpleName()).start(this::dispatch);
             }
             case 1 -> doRecover();
         }
     }
 
+    private void dispatch() {
+        while (stage == 1) {
+            synchronized (signal) {
+                if(!pending) {
+                    try {
+                        signal.wait(POLL_INTERVAL);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                pending = false;
+            }
+            try {
+                send();
+            } catch (Throwable e) {
+                mg(e);
+            }
+        }
+    }
+
+    private void wake() {
+        synchronized (signal) {
+            pending = true;
+            signal.notifyAll();
+        }
+    }
+
     /**
      * Kick all active "message senders" to indicate that some new messages are available for sending.
      */
     public static void kick() {
         for(MessageSender<?> ms: senders) {
             if(ms.isActive()) {
-                new Thread(ms::send).start();
+                ms.wake();
+            }
+        }
+    }
+
+    /**
+     * Kick the active "message senders" of the given message class to indicate that some new messages are available
+     * for sending.
+     *
+     * @param messageClass Message class.
+     */
+    public static void kick(Class<? extends Message> messageClass) {
+        for(MessageSender<?> ms: senders) {
+            if(ms.messageClass.isAssignableFrom(messageClass) && ms.isActive()) {
+                ms.wake();
             }
         }
     }
@@ -105,9 +147,10 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
             }
             stage = 2;
         }
-        if(timer != null) {
-            timer.cancel();
-            timer = null;
+        if(dispatcher != null) {
+            wake();
+            dispatcher.interrupt();
+            dispatcher = null;
         }
         terminate();
         senders.remove(this);
@@ -122,8 +165,9 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
 
     private void send() {
         synchronized (lock) {
+            Id[] cursor = new Id[1];
             while (true) {
-                if(sendBatch()) {
+                if(sendBatch(cursor)) {
                     continue;
                 }
                 break;
@@ -131,7 +175,14 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
         }
     }
 
-    private boolean sendBatch() {
+    /**
+     * Send a batch of messages. The pending messages are read page by page (keyset on Id) so that the messages
+     * skipped by {@link #canSend(Message)} are not read again in the same round.
+     *
+     * @param cursor Id of the last message read in this round (updated).
+     * @return True if more messages may be pending.
+     */
+    private boolean sendBatch(Id[] cursor) {
         if(stage != 1 || !isActive()) {
             return false;
         }
@@ -141,12 +192,24 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
         }
         String condition = getSelectCondition();
         if(condition != null && !condition.isBlank()) {
-            condition = " AND " + condition;
+            condition = " AND (" + condition + ")";
         } else {
             condition = "";
         }
-        List<T> messages = StoredObject.list(messageClass, "NOT Sent AND Error=0" + condition, "CreatedAt,Sent")
-                .filter(this::canSend).limit(bs).toList();
+        if(cursor[0] != null) {
+            condition += " AND Id>" + cursor[0];
+        }
+        List<T> messages = new ArrayList<>(StoredObject.list(messageClass, "NOT Sent AND Error=0" + condition, "Id")
+                .limit(bs).toList());
+        if(messages.isEmpty()) {
+            return false;
+        }
+        cursor[0] = messages.getLast().getId();
+        int read = messages.size();
+        messages.removeIf(m -> !canSend(m));
+        if(messages.isEmpty()) {
+            return read == bs;
+        }
         if(!messages.isEmpty() && monitorDeliveryCost()) {
             int balance = getCreditBalance();
             if(balance < 1) {
@@ -170,7 +233,8 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
     }
 
     /**
-     * Additional condition to be be added when messages are read for sending.
+     * Additional condition to be be added when messages are read for sending. This is applied in the database query,
+     * so it is preferred over filtering via {@link #canSend(Message)}.
      *
      * @return Default implementation returns null, so no additional selection criteria are applied.
      */
@@ -227,11 +291,7 @@ public abstract class MessageSender<T extends Message> extends DaemonJob {
             }
         }
         try {
-            if(getTransactionManager().transact(t -> {
-                for(T m: messages) {
-                    m.save(t);
-                }
-            }) == 0) {
+            if(Message.saveStatus(getTransactionManager(), messages) == 0) {
                 return true;
             }
         } catch(Exception e) {
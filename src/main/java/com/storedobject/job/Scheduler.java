@@ -9,7 +9,17 @@ public final class Scheduler extends SystemDevice {
     }
 
     public static String getStatus() {
-        return "";
+        return JobExecutor.getStatus();
+    }
+
+    /**
+     * Dispatch a {@link Job} that is due now. The execution is routed through the {@link JobExecutor}.
+     *
+     * @param job Job to execute.
+     * @return True if the execution is started or queued. False if it is skipped.
+     */
+    public static boolean submit(Job job) {
+        return JobExecutor.submit(job);
     }
 
     public static String getStatusValue() {
@@ -21,9 +31,11 @@ public final class Scheduler extends SystemDevice {
     }
 
     public static void restart() {
+        JobExecutor.shutdown();
     }
 
     public static void kill() {
+        JobExecutor.shutdown();
     }
 
     @Override
@@ -33,6 +45,7 @@ public final class Scheduler extends SystemDevice {
 
     @Override
     public void close() {
+        JobExecutor.shutdown();
     }
 
     @Override
@@ -47,6 +47,10 @@ public class Attachment extends StoredObject implements Detail, DataSource {
     	return file;
     }
 
+    void prefetched(StreamData file) {
+        this.file = file;
+    }
+
     public String getContentID() {
         return fileId.toString();
     }
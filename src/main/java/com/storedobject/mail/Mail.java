@@ -8,6 +8,7 @@ import com.storedobject.job.MessageGroup;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -34,6 +35,7 @@ public class Mail extends Message {
     private String cCAddress;
     private String replyToAddress;
     private String subject;
+	List<Attachment> attachments; // Prefetched while delivering (see Sender)
     private String messageType = PLAIN_TEXT;
 
 	/**
@@ -15,15 +15,17 @@ import jakarta.mail.internet.MimeMultipart;
 
 import java.io.*;
 import java.math.BigDecimal;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Properties;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public abstract class Sender extends StoredObject implements Closeable {
 
 	static final int BATCH_SIZE = 25;
 	static final Set<Id> invalidGroups = new HashSet<>();
+	private static final Map<Id, Connections> pool = new ConcurrentHashMap<>();
     private static final String[] statusValues = new String[] {
         "Active",
         "Inactive",
@@ -340,7 +342,7 @@ public abstract class Sender extends StoredObject implements Closeable {
     		bp.setContent(t, ct);
     		mp.addBodyPart(bp);
     	}
-    	for(Attachment ma: mail.listLinks(Attachment.class)) {
+    	for(Attachment ma: mail.attachments == null ? mail.listLinks(Attachment.class).toList() : mail.attachments) {
     		bp = new MimeBodyPart();
     		bp.setDataHandler(new DataHandler(ma));
     		t = ma.getFileName();
@@ -357,6 +359,9 @@ public abstract class Sender extends StoredObject implements Closeable {
 
     public Error send(Mail mail) {
 		mail.setSender(this);
+		if(transport != null && !transport.isConnected()) { // Pooled connection dropped by the server
+			closeInternal();
+		}
     	try {
     		createTransport(null);
     		if(transport == null) {
@@ -406,7 +411,12 @@ public abstract class Sender extends StoredObject implements Closeable {
 	}
 
 	static int sendMails(List<Mail> mails, TransactionManager tm) {
-		return sendMailsInt(tm, ObjectIterator.create(mails), null);
+		List<Sender> senders = senders();
+		closeInactive(senders);
+		if(senders.isEmpty()) {
+			return -1;
+		}
+		return deliver(tm, ObjectIterator.create(mails), senders);
 	}
 
 	public static int sendMails(TransactionManager tm) {
@@ -415,6 +425,7 @@ public abstract class Sender extends StoredObject implements Closeable {
 
 	public static int sendMails(int count, TransactionManager tm) {
 		List<Sender> senders = senders();
+		closeInactive(senders);
 		if(senders.isEmpty()) {
 			return -1;
 		}
@@ -422,99 +433,230 @@ public abstract class Sender extends StoredObject implements Closeable {
 		if(count > 0) {
 			mails = mails.limit(count);
 		}
-		int c, sent = 0;
-		while(mails.hasNext()) {
-			if(senders.isEmpty()) {
-				if(sent == 0) {
-					sent = -1;
-				}
-				break;
-			}
-			c = sendMailsInt(tm, mails, senders);
-			if(c >= 0) {
-				sent += c;
-				continue;
-			}
-			if(sent == 0) {
-				sent = -1;
-			}
-			break;
-		}
+		int sent = deliver(tm, mails, senders);
 		mails.close();
+		if(!exists(Mail.class, "NOT Sent AND Error=0")) { // Nothing more to send
+			closeConnections();
+		}
 		return sent;
 	}
 
+	/**
+	 * Close all the pooled connections. (Connections are kept open across the runs of sendMails while mails are
+	 * pending). This is invoked by sendMails once there are no more mails to send.
+	 */
+	public static void closeConnections() {
+		pool.values().forEach(Connections::close);
+		pool.clear();
+	}
+
+	/**
+	 * Close the pooled connections of a sender.
+	 *
+	 * @param senderId Id of the sender.
+	 */
+	private static void closeConnections(Id senderId) {
+		Connections c = pool.remove(senderId);
+		if(c != null) {
+			c.close();
+		}
+	}
+
+	private static void closeInactive(List<Sender> active) {
+		pool.keySet().stream().filter(id -> active.stream().noneMatch(s -> s.getId().equals(id))).toList()
+				.forEach(Sender::closeConnections);
+	}
+
+	/**
+	 * Closes the pooled connections of this sender once the transaction is committed so that the changes are
+	 * picked up when connected next.
+	 *
+	 * @throws Exception Not thrown here.
+	 */
+	@Override
+	public void saved() throws Exception {
+		super.saved();
+		Transaction transaction = getTransaction();
+		if(transaction == null) {
+			closeConnections(getId());
+		} else {
+			transaction.addCommitListener(t -> closeConnections(getId()));
+		}
+	}
+
 	private static List<Sender> senders() {
 		return list(Sender.class, "Status=0", true).toList();
 	}
 
-	private static int sendMailsInt(TransactionManager tm, ObjectIterator<Mail> mails, List<Sender> senders) {
-		if(senders == null) {
-			senders = senders();
-			if(senders.isEmpty()) {
-				return -1;
-			}
+	/**
+	 * Deliver the mails. The mails are distributed among the senders and the connections of each sender in rounds,
+	 * the connections send their share concurrently, and the status of each round is saved in a single transaction.
+	 *
+	 * @param tm Transaction manager.
+	 * @param mails Mails to deliver.
+	 * @param senders Active senders.
+	 * @return Number of mails processed or -1 if nothing could be processed.
+	 */
+	private static int deliver(TransactionManager tm, ObjectIterator<Mail> mails, List<Sender> senders) {
+		int connections = GlobalProperty.getInteger(tm, "MAIL-CONNECTIONS");
+		if(connections <= 0) {
+			connections = 2;
 		}
-		Transaction t = null;
-		Sender sender;
-		int senderIndex = -1, c = 0;
-		try {
-			t = tm.createTransaction();
-			Error error;
-			for(Mail mail: mails) {
-				if(senders.isEmpty()) {
-					try {
-						t.commit();
-					} catch(Throwable ignored) {
+		int sent = 0, c, senderIndex = -1;
+		Map<Id, Integer> next = new HashMap<>();
+		List<Mail> batch = new ArrayList<>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			while(mails.hasNext() && !senders.isEmpty()) {
+				batch.clear();
+				while(batch.size() < BATCH_SIZE * connections * senders.size() && mails.hasNext()) {
+					batch.add(mails.next());
+				}
+				prefetchAttachments(batch);
+				Map<Sender, List<Mail>> work = new IdentityHashMap<>();
+				Sender sender;
+				for(Mail mail: batch) {
+					if(++senderIndex >= senders.size()) {
+						senderIndex = 0;
+					}
+					sender = matchSender(senderIndex, senders, mail);
+					if(sender == null) {
+						continue;
 					}
-					return c;
+					List<Sender> list = connections(sender, connections);
+					int i = next.merge(sender.getId(), 1, Integer::sum) % list.size();
+					work.computeIfAbsent(list.get(i), k -> new ArrayList<>()).add(mail);
 				}
-				if(++senderIndex == senders.size()) {
-					senderIndex = 0;
+				List<Future<List<Result>>> futures = new ArrayList<>();
+				work.forEach((connection, list) -> futures.add(executor.submit(() -> connection.send(list))));
+				List<Result> results = new ArrayList<>();
+				for(Future<List<Result>> future: futures) {
+					try {
+						results.addAll(future.get());
+					} catch(Exception e) {
+						tm.log(e);
+					}
 				}
-				sender = matchSender(senderIndex, senders, mail);
-				if(sender == null) {
-					continue;
+				c = save(tm, results, senders);
+				if(c < 0) {
+					break;
 				}
-				error = sender.send(mail);
-				if(error != null) {
-					error.save(t);
-					if(sender.status == 2) {
-						sender.closeInternal();
-						sender.addLink(t, error);
-						sender.save(t);
-						senders.remove(sender);
+				sent += c;
+			}
+		}
+		return sent == 0 && senders.isEmpty() ? -1 : sent;
+	}
+
+	/**
+	 * Prefetch the attachments of a batch of mails so that the connections need not read them while sending. The
+	 * file contents of all the attachments are read together.
+	 *
+	 * @param batch Mails.
+	 */
+	private static void prefetchAttachments(List<Mail> batch) {
+		Map<Id, List<Attachment>> byFile = new LinkedHashMap<>();
+		for(Mail mail: batch) {
+			mail.attachments = mail.listLinks(Attachment.class).toList();
+			mail.attachments.forEach(a -> byFile.computeIfAbsent(a.getFileId(), k -> new ArrayList<>()).add(a));
+		}
+		List<Id> ids = new ArrayList<>(byFile.keySet());
+		StringBuilder in = new StringBuilder();
+		for(int i = 0; i < ids.size(); i += 500) {
+			in.setLength(0);
+			for(Id id: ids.subList(i, Math.min(ids.size(), i + 500))) {
+				in.append(in.isEmpty() ? "" : ",").append(id);
+			}
+			list(StreamData.class, "Id IN (" + in + ")", true)
+					.forEach(f -> byFile.get(f.getId()).forEach(a -> a.prefetched(f)));
+		}
+	}
+
+	private List<Result> send(List<Mail> mails) {
+		List<Result> results = new ArrayList<>();
+		for(Mail mail: mails) {
+			results.add(new Result(this, mail, send(mail)));
+			if(status == 2) { // Connection failed, rest of the mails will be sent later
+				break;
+			}
+		}
+		return results;
+	}
+
+	private static int save(TransactionManager tm, List<Result> results, List<Sender> senders) {
+		if(results.isEmpty()) {
+			return 0;
+		}
+		Set<Id> failed = new HashSet<>();
+		Transaction t = null;
+		try {
+			t = tm.createTransaction();
+			for(Result r: results) {
+				if(r.error != null) {
+					if(r.sender.status == 2) {
+						if(failed.add(r.sender.getId())) {
+							// The pooled instance may be stale (reused across the runs), so it is reloaded
+							Sender s = get(r.sender.getClass(), r.sender.getId());
+							r.error.save(t);
+							if(s != null) {
+								s.setStatus(2);
+								s.addLink(t, r.error);
+								s.save(t);
+							}
+						}
 					} else {
-						mail.save(t);
-						mail.addLink(t, error);
+						r.error.save(t);
+						r.mail.save(t);
+						r.mail.addLink(t, r.error);
 					}
 				} else {
-					mail.save(t);
-					mail.removeAllLinks(t, Error.class);
-				}
-				++c;
-				if(c == BATCH_SIZE) {
-					break;
+					r.mail.save(t);
+					r.mail.removeAllLinks(t, Error.class);
 				}
 			}
+			t.commit();
 		} catch (Exception e) {
 			tm.log(e);
 			if(t != null) {
 				t.rollback();
-				t = null;
+			}
+			return -1;
+		} finally {
+			for(Id id: failed) {
+				senders.removeIf(s -> s.getId().equals(id));
+				closeConnections(id);
 			}
 		}
-		try {
-			if(t != null) {
-				t.commit();
+		return results.size();
+	}
+
+	private static List<Sender> connections(Sender sender, int count) {
+		Connections c = pool.get(sender.getId());
+		if(c != null && c.senders.size() == count && c.transactionId.equals(sender.getTransactionId())) {
+			return c.senders;
+		}
+		if(c != null) { // Sender definition changed
+			c.close();
+		}
+		List<Sender> list = new ArrayList<>();
+		list.add(sender);
+		Sender s;
+		for(int i = 1; i < count; i++) {
+			s = get(sender.getClass(), sender.getId());
+			if(s != null) {
+				list.add(s);
 			}
-		} catch(Exception e) {
-			tm.log(e);
-			return 0;
-		} finally {
+		}
+		pool.put(sender.getId(), new Connections(sender.getTransactionId(), list));
+		return list;
+	}
+
+	private record Result(Sender sender, Mail mail, Error error) {
+	}
+
+	private record Connections(Id transactionId, List<Sender> senders) {
+
+		void close() {
 			senders.forEach(Sender::closeInternal);
 		}
-		return c;
 	}
 
 	private static Sender matchSender(int senderIndex, List<Sender> senders, Mail mail) {
@@ -13,6 +13,7 @@ import java.util.function.Predicate;
 public class StockReport extends PDFReport {
 
     private static final int LOC_WIDTH = 47;
+    private static final int PREFETCH = 100;
     private String caption = "Stock Report";
     private ObjectIterator<? extends InventoryItemType> partNumbers;
     private boolean printZeros = false;
@@ -165,146 +166,149 @@ public class StockReport extends PDFReport {
         String s, s1, error = null;
         Class<? extends InventoryItemType> type, currentType = null;
         boolean categoryHeaderPrinted = categoryHeading == null, headerPrinted = false, wide;
-        for(InventoryItemType itemType: partNumbers) {
-            setError("Printing P/N " + itemType.getPartNumber());
-            stock.setPartNumber(itemType);
-            if(separateCategories) {
-                type = itemType.getClass();
-                if(currentType == null || type != currentType) {
-                    if(costInLocalCurrency) {
-                        if(countCat > 0) {
-                            table.addRowCell(createCell(catName + " (" + countCat + ") Stock Value: " + totalCostCat, true));
+        // Next P/Ns are read while the stock of the current one is computed and printed
+        try(ObjectIterator<? extends InventoryItemType> pns = partNumbers.prefetch(PREFETCH)) {
+            for(InventoryItemType itemType: pns) {
+                setError("Printing P/N " + itemType.getPartNumber());
+                stock.setPartNumber(itemType);
+                if(separateCategories) {
+                    type = itemType.getClass();
+                    if(currentType == null || type != currentType) {
+                        if(costInLocalCurrency) {
+                            if(countCat > 0) {
+                                table.addRowCell(createCell(catName + " (" + countCat + ") Stock Value: " + totalCostCat, true));
+                            }
+                            countCat = 0;
+                            totalCostCat = totalCostCat.zero();
                         }
-                        countCat = 0;
-                        totalCostCat = totalCostCat.zero();
+                        currentType = type;
+                        categoryHeaderPrinted = false;
                     }
-                    currentType = type;
-                    categoryHeaderPrinted = false;
-                }
-            }
-            totalQty = itemType.getUnitOfMeasurement();
-            qtyInTransit = totalQty;
-            qty = totalQty;
-            totalCost = new Money();
-            costInTransit = new Money();
-            stockLocation = new Text();
-            qtyStr = new Text();
-            sno = new Text();
-            costStr = new Text();
-            InventoryLocation tLoc;
-            stockList = ObjectIterator.create(stock.getStocks());
-            if(itemFilter != null) {
-                stockList = stockList.filter(itemFilter);
-            }
-            for(StockHistory ii : stockList) {
-                qty = ii.getQuantity();
-                cost = ii.getCost();
-                if(costInLocalCurrency) {
-                    cost = cost.toLocal(stock.getDate(), se);
-                    grandTotalCost = grandTotalCost.add(cost);
-                    totalCostCat = totalCostCat.add(cost);
                 }
-                try {
-                    totalQty = totalQty.add(qty);
-                } catch(Throwable e) {
-                    error = e.getMessage();
+                totalQty = itemType.getUnitOfMeasurement();
+                qtyInTransit = totalQty;
+                qty = totalQty;
+                totalCost = new Money();
+                costInTransit = new Money();
+                stockLocation = new Text();
+                qtyStr = new Text();
+                sno = new Text();
+                costStr = new Text();
+                InventoryLocation tLoc;
+                stockList = ObjectIterator.create(stock.getStocks());
+                if(itemFilter != null) {
+                    stockList = stockList.filter(itemFilter);
                 }
-                try {
-                    totalCost = totalCost.add(cost);
-                } catch(Throwable e) {
-                    error = e.getMessage();
-                }
-                stockLocation.append(s = trim(ii.getLocation()));
-                wide = false;
-                if(ii.inTransit()) {
-                    stockLocation.append(PDFColor.RED);
-                    s1 = " - In transit";
-                    if((s.length() + s1.length()) <= LOC_WIDTH) {
-                        stockLocation.append(s1);
-                        s1 = "";
-                    } else {
-                        s1 += " ";
+                for(StockHistory ii : stockList) {
+                    qty = ii.getQuantity();
+                    cost = ii.getCost();
+                    if(costInLocalCurrency) {
+                        cost = cost.toLocal(stock.getDate(), se);
+                        grandTotalCost = grandTotalCost.add(cost);
+                        totalCostCat = totalCostCat.add(cost);
+                    }
+                    try {
+                        totalQty = totalQty.add(qty);
+                    } catch(Throwable e) {
+                        error = e.getMessage();
                     }
-                    tLoc = ii.getPreviousLocation();
-                    if(tLoc != null) {
-                        s1 += "from " + tLoc.toDisplay();
-                        stockLocation.newLine(true).append(trim(s1));
-                        wide = true;
+                    try {
+                        totalCost = totalCost.add(cost);
+                    } catch(Throwable e) {
+                        error = e.getMessage();
+                    }
+                    stockLocation.append(s = trim(ii.getLocation()));
+                    wide = false;
+                    if(ii.inTransit()) {
+                        stockLocation.append(PDFColor.RED);
+                        s1 = " - In transit";
+                        if((s.length() + s1.length()) <= LOC_WIDTH) {
+                            stockLocation.append(s1);
+                            s1 = "";
+                        } else {
+                            s1 += " ";
+                        }
+                        tLoc = ii.getPreviousLocation();
+                        if(tLoc != null) {
+                            s1 += "from " + tLoc.toDisplay();
+                            stockLocation.newLine(true).append(trim(s1));
+                            wide = true;
+                        }
+                        stockLocation.append(PDFColor.BLACK);
+                        qtyInTransit = qtyInTransit.add(qty);
+                        costInTransit = costInTransit.add(cost);
+                    }
+                    stockLocation.newLine(true);
+                    sno.append(itemType.getSerialNumberShortName() + " " + ii.getSerialNumber()).newLine(true);
+                    qtyStr.append(qty).newLine(true);
+                    costStr.append(cost).newLine(true);
+                    if(wide) {
+                        sno.newLine(true);
+                        qtyStr.newLine(true);
+                        costStr.newLine(true);
                     }
-                    stockLocation.append(PDFColor.BLACK);
-                    qtyInTransit = qtyInTransit.add(qty);
-                    costInTransit = costInTransit.add(cost);
                 }
-                stockLocation.newLine(true);
-                sno.append(itemType.getSerialNumberShortName() + " " + ii.getSerialNumber()).newLine(true);
-                qtyStr.append(qty).newLine(true);
-                costStr.append(cost).newLine(true);
-                if(wide) {
-                    sno.newLine(true);
-                    qtyStr.newLine(true);
-                    costStr.newLine(true);
+                if(error == null && (totalQty.isZero() || totalQty.isGreaterThan(qty))) {
+                    if(!totalQty.isZero()) {
+                        stockLocation.newLine(true);
+                        qtyStr.newLine(true);
+                        costStr.newLine(true);
+                    }
+                    stockLocation.append("Total");
+                    qtyStr.append(totalQty);
+                    costStr.append(totalCost);
                 }
-            }
-            if(error == null && (totalQty.isZero() || totalQty.isGreaterThan(qty))) {
-                if(!totalQty.isZero()) {
+                if(!qtyInTransit.isZero()) {
                     stockLocation.newLine(true);
                     qtyStr.newLine(true);
                     costStr.newLine(true);
+                    stockLocation.append(PDFColor.RED).append("In Transit").append(PDFColor.BLACK);
+                    qtyStr.append(qtyInTransit);
+                    costStr.append(costInTransit);
                 }
-                stockLocation.append("Total");
-                qtyStr.append(totalQty);
-                costStr.append(totalCost);
-            }
-            if(!qtyInTransit.isZero()) {
-                stockLocation.newLine(true);
-                qtyStr.newLine(true);
-                costStr.newLine(true);
-                stockLocation.append(PDFColor.RED).append("In Transit").append(PDFColor.BLACK);
-                qtyStr.append(qtyInTransit);
-                costStr.append(costInTransit);
-            }
-            if(error == null) {
-                if(totalQty.isZero()) {
-                    if(!printZeros) {
-                        continue;
+                if(error == null) {
+                    if(totalQty.isZero()) {
+                        if(!printZeros) {
+                            continue;
+                        }
                     }
                 }
-            }
-            if(!categoryHeaderPrinted) {
-                printHeading(catName = categoryHeading == null ? getItemTypeTitle(itemType) : categoryHeading, table);
-                categoryHeaderPrinted = true;
-                categoryHeading = null;
-                ++catCount;
-            }
-            if(!headerPrinted) {
-                headerPrinted = true;
-            }
-            ++count;
-            ++countCat;
-            table.addCell(createCell((separateCategories ? (catCount + "/") : "") + count));
-            table.addCell(createCell(itemType.getName()));
-            table.addCell(createCell(itemType.getPartNumber()));
-            table.addCell(createCell(sno));
-            table.addCell(createCell(stockLocation));
-            if(error != null) {
-                qtyStr.newLine(true).append(error, PDFColor.RED);
-                costStr.newLine(true).append("-", PDFColor.RED);
-                error = null;
-            }
-            table.addCell(createCell(qtyStr, true));
-            table.addCell(createCell(costStr, true));
-            if(table.getNumberOfRows() > 80) {
-                if(newPage) {
-                    newPage();
-                    newPage = false;
-                    needGap = false;
-                } else {
-                    if(needGap) {
-                        addGap(5);
+                if(!categoryHeaderPrinted) {
+                    printHeading(catName = categoryHeading == null ? getItemTypeTitle(itemType) : categoryHeading, table);
+                    categoryHeaderPrinted = true;
+                    categoryHeading = null;
+                    ++catCount;
+                }
+                if(!headerPrinted) {
+                    headerPrinted = true;
+                }
+                ++count;
+                ++countCat;
+                table.addCell(createCell((separateCategories ? (catCount + "/") : "") + count));
+                table.addCell(createCell(itemType.getName()));
+                table.addCell(createCell(itemType.getPartNumber()));
+                table.addCell(createCell(sno));
+                table.addCell(createCell(stockLocation));
+                if(error != null) {
+                    qtyStr.newLine(true).append(error, PDFColor.RED);
+                    costStr.newLine(true).append("-", PDFColor.RED);
+                    error = null;
+                }
+                table.addCell(createCell(qtyStr, true));
+                table.addCell(createCell(costStr, true));
+                if(table.getNumberOfRows() > 80) {
+                    if(newPage) {
+                        newPage();
+                        newPage = false;
                         needGap = false;
+                    } else {
+                        if(needGap) {
+                            addGap(5);
+                            needGap = false;
+                        }
                     }
+                    add(table);
                 }
-                add(table);
             }
         }
         if(newPage) {
@@ -7,6 +7,7 @@ import com.storedobject.pdf.PDFReport;
 import com.storedobject.pdf.PDFTable;
 
 import java.sql.Date;
+import java.util.Iterator;
 
 /**
  * Trial Balance.
@@ -17,6 +18,8 @@ public class TrialBalance extends PDFReport implements JSONParameter {
 
     private SystemEntity entity;
     private Date date;
+    private Money dTotal, cTotal;
+    private int rows;
 
     public TrialBalance(Device device) {
         this(device, null, null);
@@ -70,33 +73,32 @@ public class TrialBalance extends PDFReport implements JSONParameter {
         table.addCell(createCell(createTitleText("Debit Balance"), true));
         table.addCell(createCell(createTitleText("Credit Balance"), true));
         table.setHeaderRows(1);
-        Money b, dTotal = new Money(entity.getCurrency()), cTotal = new Money(entity.getCurrency());
-        ObjectIterator<Account> list =
-                Account.list(Account.class, "SystemEntity=" + entity.getId(), "T_Family", true)
-                        .filter(a -> !(a instanceof AccountTitle));
-        int rows = 0;
-        String as;
-        int bracket;
-        for(Account a: list) {
-            as = a.toString();
-            if((bracket = as.indexOf(") ")) > 0) {
-                as = as.substring(0, bracket + 1) + "\n" + as.substring(bracket + 2);
-            }
-            b = a.getLocalCurrencyBalance(date);
-            table.addCell(createCell(as));
-            if(b.isDebit()) {
-                b = b.negate();
-                dTotal = dTotal.add(b);
-                table.addCell(createCell(b.toString(false), true));
-                table.addBlankCell();
+        dTotal = new Money(entity.getCurrency());
+        cTotal = new Money(entity.getCurrency());
+        rows = 0;
+        String condition = "SystemEntity=" + entity.getId();
+        try(ObjectIterator<Account> list = Account.list(Account.class, condition, "T_Family,Id", true)) {
+            if(!date.before(entity.getWorkingDate())) {
+                list.filter(a -> !(a instanceof AccountTitle))
+                        .forEach(a -> addRow(table, a, a.getLocalCurrencyBalance(date)));
             } else {
-                cTotal = cTotal.add(b);
-                table.addBlankCell();
-                table.addCell(createCell(b.toString(false), true));
-            }
-            if(++rows >= 80) {
-                add(table);
-                rows = 0;
+                // Dated balances of all the accounts are computed together and they come in the same order (T_Family,
+                // Id) as the accounts, so both are read in step
+                Iterator<Account> accounts = list.iterator();
+                Account.forEachBalance(condition, date, (id, bal, balLC) -> {
+                    while(accounts.hasNext()) {
+                        Account a = accounts.next();
+                        if(a.getId().equals(id)) {
+                            if(!(a instanceof AccountTitle)) {
+                                addRow(table, a, a.createLocalCurrencyAmount(balLC));
+                            }
+                            return;
+                        }
+                        addRow(table, a);
+                    }
+                });
+                // Accounts without a computed balance (if any) are not skipped - their balances are obtained one by one
+                accounts.forEachRemaining(a -> addRow(table, a));
             }
         }
         table.addCell(createCenteredCell("* * * Total"));
@@ -104,4 +106,33 @@ public class TrialBalance extends PDFReport implements JSONParameter {
         table.addCell(createCell(cTotal, true));
         add(table);
     }
+
+    private void addRow(PDFTable table, Account a) {
+        if(!(a instanceof AccountTitle)) {
+            addRow(table, a, a.getLocalCurrencyBalance(date));
+        }
+    }
+
+    private void addRow(PDFTable table, Account a, Money b) {
+        String as = a.toString();
+        int bracket;
+        if((bracket = as.indexOf(") ")) > 0) {
+            as = as.substring(0, bracket + 1) + "\n" + as.substring(bracket + 2);
+        }
+        table.addCell(createCell(as));
+        if(b.isDebit()) {
+            b = b.negate();
+            dTotal = dTotal.add(b);
+            table.addCell(createCell(b.toString(false), true));
+            table.addBlankCell();
+        } else {
+            cTotal = cTotal.add(b);
+            table.addBlankCell();
+            table.addCell(createCell(b.toString(false), true));
+        }
+        if(++rows >= 80) {
+            add(table);
+            rows = 0;
+        }
+    }
 }
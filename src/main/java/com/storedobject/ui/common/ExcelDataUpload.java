@@ -160,34 +160,31 @@ public class ExcelDataUpload extends UploadProcessorView implements Transactiona
             redMessage("Not a valid class: " + getCellValue("Class"));
             return;
         }
-        Transaction transaction = null;
         ArrayList<Object> attributes = (ArrayList<Object>) getCellValue("Attributes");
+        TransactionManager tm = getTransactionManager();
+        List<StoredObject> objects = new ArrayList<>();
         StoredObject so;
         Object[] row;
         int a = -1;
+        // Objects are created first so that the transaction is held only while saving (objects are validated when
+        // saved)
         for(int r = 0; r < data.size(); r++) {
             row = data.get(r);
             try {
+                a = -1;
                 so = objectClass.getDeclaredConstructor().newInstance();
                 for(a = 0; a < attributes.size(); a++) {
                     so.setRawValue(attributes.get(a).toString(), row[a]);
                 }
-                if(transaction == null) {
-                    transaction = getTransactionManager().createTransaction();
-                }
-                so.save(transaction);
+                objects.add(so);
             } catch(Throwable error) {
-                if(transaction != null) {
-                    transaction.rollback();
-                    transaction = null;
-                }
                 StringBuilder e = new StringBuilder("Error in row");
                 if(a >= 0 && a < attributes.size()) {
                     e.append(" (while setting ").append(attributes.get(a)).
                             append(" = ").append(row[a]).append(")");
                 }
                 e.append(": ");
-                if(a < 0) {
+                if(a < 0 || a >= attributes.size()) {
                     e.append(getExcelRow(r));
                 } else {
                     e.append(getExcelCell(r, a));
@@ -195,15 +192,25 @@ public class ExcelDataUpload extends UploadProcessorView implements Transactiona
                 redMessage(e);
                 redMessage(error);
                 getApplication().log(e, error);
-                break;
+                return;
             }
         }
-        if(transaction != null) {
-            try {
-                transaction.commit();
-            } catch(Exception e) {
-                redMessage(e);
-            }
+        if(objects.isEmpty()) {
+            return;
+        }
+        int[] r = new int[] { -1 };
+        try {
+            tm.transact(t -> {
+                for(r[0] = 0; r[0] < objects.size(); r[0]++) {
+                    objects.get(r[0]).save(t);
+                }
+            });
+        } catch(Exception error) {
+            String e = r[0] >= 0 && r[0] < objects.size() ? ("Error in row: " + getExcelRow(r[0]))
+                    : "Error while saving";
+            redMessage(e);
+            redMessage(error);
+            getApplication().log(e, error);
         }
     }
 
@@ -214,13 +221,13 @@ public class ExcelDataUpload extends UploadProcessorView implements Transactiona
      */
     public void saveObjects(int index) {
         testAfter();
-        transact(t -> {
-            for(Object[] d: data) {
-                if(d[index] instanceof StoredObject) {
-                    ((StoredObject)d[index]).save(t);
-                }
+        List<StoredObject> objects = new ArrayList<>();
+        for(Object[] d: data) {
+            if(d[index] instanceof StoredObject so) {
+                objects.add(so);
             }
-        });
+        }
+        transact(t -> t.save(objects));
     }
 
     /**
@@ -79,11 +79,7 @@ public class ProcessCheckList extends DataForm implements Transactional {
             message("No changes done");
             return true;
         }
-        completed = transact(t -> {
-            for(AbstractCheckList m: modified) {
-                m.save(t);
-            }
-        });
+        completed = transact(t -> t.save(modified));
         if(!completed) {
             return true;
         }
@@ -98,11 +94,7 @@ public class ProcessCheckList extends DataForm implements Transactional {
             modified.add(item);
             return false;
         });
-        transact(t -> {
-            for(AbstractCheckList m: modified) {
-                m.save(t);
-            }
-        });
+        transact(t -> t.save(modified));
         return true;
     }
 }
\ No newline at end of file
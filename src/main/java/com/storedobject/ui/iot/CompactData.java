@@ -0,0 +1,18 @@
+package com.storedobject.ui.iot;
+
+import com.storedobject.iot.Block;
+
+public class CompactData extends BlockSelector {
+
+    public CompactData() {
+        super("Compact Data");
+    }
+
+    @Override
+    protected boolean accept(Block block) throws Exception {
+        close();
+        long deleted = block.compactData(getTransactionManager());
+        message("Data records removed: " + deleted);
+        return true;
+    }
+}